@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkGenerationServiceTest {
+
+    // A generator whose rules cannot be had, so every chunk solve throws
+    private static ChunkGenerator unsolvable() {
+        return new ChunkGenerator(1) {
+            @Override
+            public RuleSet ruleSetFor(int atX, int atY) {
+                throw new IllegalStateException("no rules for " + atX + "," + atY);
+            }
+        };
+    }
+
+    private static void assertFailedOnce(ChunkGenerationService service, CompletableFuture<Chunk> first) {
+        assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+        assertTrue(service.isFailed(0, 5));
+        assertFalse(service.isPending(0, 5));
+
+        // Asking again gets the recorded failure instead of another attempt
+        CompletableFuture<Chunk> again = service.request(0, 5);
+        assertTrue(again.isCompletedExceptionally());
+        assertFalse(service.isPending(0, 5));
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    void workerFailuresAreNotRetried() {
+        ChunkGenerationService service = new ChunkGenerationService(unsolvable(), 1);
+        try {
+            assertFailedOnce(service, service.request(0, 5));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void slicedFailuresAreNotRetried() {
+        ChunkGenerationService service = new ChunkGenerationService(unsolvable(), 0);
+        CompletableFuture<Chunk> first = service.request(0, 5);
+        while (!first.isDone()) service.runFor(1_000_000);
+        assertFailedOnce(service, first);
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkGeneratorTest {
+    private static final int REGION = RegionSummary.SIZE;
+
+    @Test
+    void regionSummariesAreTrimmedFarthestFirst() {
+        ChunkGenerator generator = new ChunkGenerator(1);
+        generator.setRegionSummaryBudget(10);
+        // Chunks above the surface are never solved, so this stays cheap
+        for (int rx = 0; rx < 12; rx++) generator.grabChunk(rx * REGION, 0);
+
+        // Trimmed to 90% of the budget, like chunk eviction
+        assertEquals(3, generator.trimRegionSummaries(0, 0));
+        for (int rx = 0; rx < 12; rx++) {
+            assertEquals(rx < 9, generator.getRegionSummary(rx, 0) != null, "region " + rx);
+        }
+        assertEquals(0, generator.trimRegionSummaries(0, 0));
+    }
+
+    @Test
+    void workersSolvingWithColdRulesMatchASequentialWorld(@TempDir Path dir) throws Exception {
+        Path rules = dir.resolve("cold.txt");
+        Files.copy(RuleSetRegistryTest.EXAMPLES, rules);
+
+        // Every worker solves on its own thread's solver and hits the not-yet-loaded rules at once
+        ChunkGenerator concurrent = new ChunkGenerator(5);
+        concurrent.setRuleSetForDepth(Integer.MIN_VALUE, rules.toString());
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int column = t;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int y = 4; y < 12; y++) concurrent.grabChunk(column, y);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) result.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        ChunkGenerator sequential = new ChunkGenerator(5);
+        sequential.setRuleSetForDepth(Integer.MIN_VALUE, rules.toString());
+        for (int y = 4; y < 12; y++) {
+            for (int x = 0; x < threads; x++) {
+                int[][] expected = sequential.grabChunk(x, y).getDataLayer();
+                assertTrue(Arrays.deepEquals(expected, concurrent.getChunkIfExists(x, y).getDataLayer()),
+                        "chunk " + x + "," + y);
+            }
+        }
+    }
+}
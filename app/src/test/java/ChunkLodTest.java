@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkLodTest {
+    private static final int AIR = 0;
+    private static final int BLOCK = 1;
+    // Half a tile, 4 eighths
+    private static final int SLOPE = 2;
+
+    private static int[][] fill(int size, int tile) {
+        int[][] tiles = new int[size][size];
+        for (int[] row : tiles) Arrays.fill(row, tile);
+        return tiles;
+    }
+
+    @Test
+    void levelsHalveUntilOneCellCoversTheChunk() {
+        ChunkLod lod = ChunkLod.build(TileLayer.pack(fill(8, SLOPE), 8));
+        assertEquals(3, lod.getLevelCount());
+        assertEquals(4, lod.level(1).size);
+        assertEquals(2, lod.level(2).size);
+        assertEquals(1, lod.level(3).size);
+    }
+
+    @Test
+    void solidFractionRoundsEighthsTo255ths() {
+        assertEquals(0, ChunkLod.solidFraction(0, 4));
+        assertEquals(ChunkLod.FULL, ChunkLod.solidFraction(32, 4));
+        assertEquals(128, ChunkLod.solidFraction(4, 1));
+        assertEquals(64, ChunkLod.solidFraction(2, 1));
+    }
+
+    @Test
+    void halfSolidChunk() {
+        int[][] tiles = fill(8, AIR);
+        for (int y = 0; y < 8; y++)
+            for (int x = 0; x < 4; x++)
+                tiles[y][x] = BLOCK;
+        ChunkLod lod = ChunkLod.build(TileLayer.pack(tiles, 8));
+
+        assertEquals(BLOCK, lod.dominantTile());
+        assertEquals(128, lod.solidFraction());
+
+        ChunkLod.Level fine = lod.level(1);
+        assertEquals(BLOCK, fine.dominantTile(0, 0));
+        assertEquals(ChunkLod.FULL, fine.solidFraction(0, 0));
+        assertEquals(AIR, fine.dominantTile(3, 0));
+        assertEquals(0, fine.solidFraction(3, 0));
+    }
+
+    @Test
+    void dominantTileIsWeightedByArea() {
+        // Three slopes (12 eighths) outweigh one block (8 eighths)
+        int[][] tiles = {{SLOPE, SLOPE}, {SLOPE, BLOCK}};
+        ChunkLod lod = ChunkLod.build(TileLayer.pack(tiles, 2));
+        assertEquals(SLOPE, lod.dominantTile());
+        assertEquals(ChunkLod.solidFraction(20, 4), lod.solidFraction());
+
+        // Two slopes tie with one block; the lower id wins
+        tiles = new int[][]{{SLOPE, SLOPE}, {BLOCK, AIR}};
+        lod = ChunkLod.build(TileLayer.pack(tiles, 2));
+        assertEquals(BLOCK, lod.dominantTile());
+        assertEquals(ChunkLod.solidFraction(16, 4), lod.solidFraction());
+    }
+
+    @Test
+    void uniformLayersShareOneUncountedSummary() {
+        ChunkLod a = ChunkLod.build(TileLayer.uniform(8, BLOCK));
+        ChunkLod b = ChunkLod.build(TileLayer.pack(fill(8, BLOCK), 8));
+        assertSame(a, b);
+        assertEquals(0, a.estimateBytes());
+        assertEquals(BLOCK, a.dominantTile());
+        assertEquals(ChunkLod.FULL, a.solidFraction());
+
+        ChunkLod air = ChunkLod.build(TileLayer.uniform(8, AIR));
+        assertEquals(AIR, air.dominantTile());
+        assertEquals(0, air.solidFraction());
+
+        int[][] mixed = fill(8, BLOCK);
+        mixed[0][0] = AIR;
+        assertTrue(ChunkLod.build(TileLayer.pack(mixed, 8)).estimateBytes() > 0);
+    }
+}
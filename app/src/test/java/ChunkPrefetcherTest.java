@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkPrefetcherTest {
+
+    @Test
+    void outstandingMatchesAHashMap() {
+        ChunkPrefetcher.Outstanding table = new ChunkPrefetcher.Outstanding();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int op = 0; op < 200_000; op++) {
+            // A small key space around the origin, negatives included, so probe runs collide and wrap
+            long key = ((long) (random.nextInt(64) - 32) << 32) | ((random.nextInt(64) - 32) & 0xFFFFFFFFL);
+            if (random.nextInt(3) == 0) {
+                table.remove(key);
+                expected.remove(key);
+            } else {
+                table.put(key, op);
+                expected.put(key, (long) op);
+            }
+            assertEquals(expected.containsKey(key), table.contains(key));
+        }
+
+        assertEquals(expected.size(), table.size);
+        int found = 0;
+        for (int i = 0; i < table.keys.length; i++) {
+            if (!table.used[i]) continue;
+            found++;
+            assertEquals(expected.get(table.keys[i]), table.times[i]);
+        }
+        assertEquals(expected.size(), found);
+    }
+}
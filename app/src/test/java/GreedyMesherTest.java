@@ -0,0 +1,197 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GreedyMesherTest {
+    private static final float H = 0.5f;
+
+    // Colours of the per-tile renderer before the shapes became a table; unknown ids used the last entry
+    private static final float[][] ORIGINAL_COLORS = {
+            {0.0f, 0.0f, 0.0f}, {0.0f, 1.0f, 0.0f}, {0.0f, 0.8f, 0.8f}, {0.8f, 0.8f, 0.0f},
+            {0.8f, 0.0f, 0.8f}, {1.0f, 0.5f, 0.0f}, {0.5f, 0.5f, 1.0f}, {1.0f, 0.5f, 0.5f},
+            {0.6f, 0.3f, 0.8f}, {0.8f, 0.3f, 0.6f}, {0.1f, 0.6f, 0.9f}, {0.1f, 0.6f, 0.9f},
+            {0.1f, 0.6f, 0.9f}, {0.1f, 0.6f, 0.9f}, {1.0f, 0.0f, 0.0f}, {1.0f, 0.0f, 0.0f},
+            {1.0f, 0.0f, 0.0f}, {1.0f, 0.0f, 0.0f}, {1.0f, 0.0f, 0.0f},
+    };
+
+    // Triangles of one tile at the origin, as the per-tile switch drew them: x, y corners, 3 per triangle
+    private static float[] originalShape(int tile) {
+        switch (tile) {
+            case 0: return new float[0];
+            case 2: return new float[]{0, 1, 1, 1, 1, 0};
+            case 3: return new float[]{0, 0, 1, 1, 0, 1};
+            case 4: return new float[]{0, 0, 1, 0, 1, 1};
+            case 5: return new float[]{0, 0, 1, 0, 0, 1};
+            case 6: return quad(0, H, 1, 1);
+            case 7: return quad(0, 0, 1, H);
+            case 8: return quad(0, 0, H, 1);
+            case 9: return quad(H, 0, 1, 1);
+            case 10: return fan(0, 0, 1, 0, 1, 1, H, 1, 0, H);
+            case 11: return fan(0, 0, 1, 0, 1, H, H, 1, 0, 1);
+            case 12: return fan(0, 0, H, 0, 1, H, 1, 1, 0, 1);
+            case 13: return fan(0, H, H, 0, 1, 0, 1, 1, 0, 1);
+            case 14: return new float[]{0, 0, H, 0, 0, H};
+            case 15: return new float[]{1, 0, 1, H, H, 0};
+            case 16: return new float[]{1, 1, H, 1, 1, H};
+            case 17: return new float[]{0, 1, H, 1, 0, H};
+            default: return quad(0, 0, 1, 1);
+        }
+    }
+
+    private static float[] quad(float x0, float y0, float x1, float y1) {
+        return new float[]{x0, y0, x1, y0, x1, y1, x0, y0, x1, y1, x0, y1};
+    }
+
+    private static float[] fan(float... corners) {
+        float[] out = new float[(corners.length / 2 - 2) * 6];
+        for (int i = 2, o = 0; i + 3 < corners.length; i += 2) {
+            float[] t = {corners[0], corners[1], corners[i], corners[i + 1], corners[i + 2], corners[i + 3]};
+            System.arraycopy(t, 0, out, o, 6);
+            o += 6;
+        }
+        return out;
+    }
+
+    private static float[] originalColor(int tile) {
+        return ORIGINAL_COLORS[Math.min(tile, ORIGINAL_COLORS.length - 1)];
+    }
+
+    private static List<int[]> mesh(int[] keys, int width, int height,
+                                    GreedyMesher.MergeRule horizontal, GreedyMesher.MergeRule vertical) {
+        List<int[]> rects = new ArrayList<>();
+        new GreedyMesher().mesh(keys, width, height, horizontal, vertical,
+                (x, y, w, h, key) -> rects.add(new int[]{x, y, w, h, key}));
+        return rects;
+    }
+
+    // Area drawn in each colour, keyed by r, g, b
+    private static Map<List<Float>, Double> areaByColor(float[] vertices, int floats) {
+        Map<List<Float>, Double> areas = new HashMap<>();
+        int stride = ChunkMesh.FLOATS_PER_VERTEX;
+        for (int i = 0; i < floats; i += 3 * stride) {
+            double ax = vertices[i], ay = vertices[i + 1];
+            double bx = vertices[i + stride], by = vertices[i + stride + 1];
+            double cx = vertices[i + 2 * stride], cy = vertices[i + 2 * stride + 1];
+            double area = Math.abs((bx - ax) * (cy - ay) - (cx - ax) * (by - ay)) / 2;
+            List<Float> color = Arrays.asList(vertices[i + 2], vertices[i + 3], vertices[i + 4]);
+            areas.merge(color, area, Double::sum);
+        }
+        return areas;
+    }
+
+    @Test
+    void uniformLayerIsOneRectangle() {
+        int[] keys = new int[16 * 16];
+        Arrays.fill(keys, 1);
+        List<int[]> rects = mesh(keys, 16, 16, key -> true, key -> true);
+        assertEquals(1, rects.size());
+        assertArrayEquals(new int[]{0, 0, 16, 16, 1}, rects.get(0));
+    }
+
+    @Test
+    void checkerboardDoesNotMerge() {
+        int[] keys = new int[16 * 16];
+        for (int i = 0; i < keys.length; i++) keys[i] = (i % 16 + i / 16) % 2 == 0 ? 1 : 2;
+        List<int[]> rects = mesh(keys, 16, 16, key -> true, key -> true);
+        assertEquals(16 * 16, rects.size());
+        for (int[] rect : rects) assertEquals(1, rect[2] * rect[3]);
+
+        // Blanking one colour leaves the other as single cells too
+        for (int i = 0; i < keys.length; i++) if (keys[i] == 2) keys[i] = -1;
+        assertEquals(16 * 16 / 2, mesh(keys, 16, 16, key -> true, key -> true).size());
+    }
+
+    @Test
+    void mergeRulesRestrictTheAxis() {
+        int[] keys = new int[8 * 8];
+        Arrays.fill(keys, 6);
+        assertEquals(8, mesh(keys, 8, 8, key -> true, key -> false).size());
+        assertEquals(8, mesh(keys, 8, 8, key -> false, key -> true).size());
+        assertEquals(64, mesh(keys, 8, 8, key -> false, key -> false).size());
+    }
+
+    @Test
+    void tableShapesMatchThePerTileSwitch() {
+        ChunkMeshBuilder builder = new ChunkMeshBuilder();
+        // One past the table, which used to be drawn as a red full block
+        for (int tile = 1; tile <= TileGeometry.tileCount(); tile++) {
+            float[] shape = originalShape(tile);
+            float[] color = originalColor(tile);
+            ChunkMesh mesh = builder.build(TileLayer.uniform(1, tile));
+
+            assertEquals(shape.length / 2, mesh.getVertexCount(), "tile " + tile);
+            float[] vertices = mesh.getVertices();
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                int at = v * ChunkMesh.FLOATS_PER_VERTEX;
+                assertArrayEquals(new float[]{shape[2 * v], shape[2 * v + 1], color[0], color[1], color[2]},
+                        Arrays.copyOfRange(vertices, at, at + ChunkMesh.FLOATS_PER_VERTEX), "tile " + tile);
+            }
+        }
+    }
+
+    @Test
+    void mergedLayerCoversWhatPerTileDrawingCovered() {
+        int size = 16;
+        int[][] tiles = new int[size][size];
+        Random random = new Random(3);
+        // Mostly blocks and half blocks in runs, so plenty of quads merge
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                tiles[y][x] = random.nextInt(4) == 0 ? random.nextInt(18) : (x / 4 + y / 5) % 2 == 0 ? 1 : 6 + y % 4;
+            }
+        }
+
+        ChunkMesh mesh = new ChunkMeshBuilder().build(TileLayer.pack(tiles, size));
+
+        List<Float> perTile = new ArrayList<>();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float[] shape = originalShape(tiles[y][x]);
+                float[] color = originalColor(tiles[y][x]);
+                for (int i = 0; i < shape.length; i += 2) {
+                    perTile.addAll(Arrays.asList(x + shape[i], y + shape[i + 1], color[0], color[1], color[2]));
+                }
+            }
+        }
+        float[] expected = new float[perTile.size()];
+        for (int i = 0; i < expected.length; i++) expected[i] = perTile.get(i);
+
+        assertTrue(mesh.getVertexCount() < expected.length / ChunkMesh.FLOATS_PER_VERTEX);
+        Map<List<Float>, Double> want = areaByColor(expected, expected.length);
+        Map<List<Float>, Double> got = areaByColor(mesh.getVertices(), mesh.getVertexCount() * ChunkMesh.FLOATS_PER_VERTEX);
+        assertEquals(want.keySet(), got.keySet());
+        for (List<Float> color : want.keySet()) assertEquals(want.get(color), got.get(color), 1e-4, color.toString());
+    }
+
+    @Test
+    void cellKeysMergeOnlyEqualTileAndShade() {
+        assertEquals(5 << 8 | 128, ChunkMeshBuilder.cellKey(5, 128));
+        assertNotEquals(ChunkMeshBuilder.cellKey(1, 128), ChunkMeshBuilder.cellKey(1, 127));
+        assertNotEquals(ChunkMeshBuilder.cellKey(1, 128), ChunkMeshBuilder.cellKey(2, 128));
+
+        // Two full chunks side by side share a quad; a half solid one is shaded half way to black
+        RegionSummary summary = new RegionSummary(0, 0);
+        ChunkLod full = ChunkLod.build(TileLayer.pack(new int[][]{{1, 1}, {1, 1}}, 2));
+        summary.record(0, 0, full);
+        summary.record(1, 0, full);
+        summary.record(0, 2, ChunkLod.build(TileLayer.pack(new int[][]{{1, 1}, {0, 0}}, 2)));
+        ChunkMesh mesh = new ChunkMeshBuilder().buildRegion(summary, 8);
+
+        assertEquals(12, mesh.getVertexCount());
+        float[] v = mesh.getVertices();
+        float[] color = TileGeometry.color(1);
+        int stride = ChunkMesh.FLOATS_PER_VERTEX;
+        // The merged quad's far corner, and its full colour
+        assertArrayEquals(new float[]{16, 8, color[0], color[1], color[2]}, Arrays.copyOfRange(v, 2 * stride, 3 * stride));
+        float shade = ChunkLod.solidFraction(16, 4) / (float) ChunkLod.FULL;
+        assertArrayEquals(new float[]{8, 24, color[0] * shade, color[1] * shade, color[2] * shade},
+                Arrays.copyOfRange(v, 8 * stride, 9 * stride));
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionSummaryTest {
+    private static final int SIZE = RegionSummary.SIZE;
+
+    private static ChunkLod lod(int[][] tiles) {
+        return ChunkLod.build(TileLayer.pack(tiles, tiles.length));
+    }
+
+    private static int[] keys(RegionSummary summary) {
+        int[] keys = new int[SIZE * SIZE];
+        summary.fillKeys(keys);
+        return keys;
+    }
+
+    @Test
+    void unrecordedAndEmptyChunksHaveNoCell() {
+        RegionSummary summary = new RegionSummary(0, 0);
+        summary.record(3, 4, lod(new int[][]{{0, 0}, {0, 0}}));
+        for (int key : keys(summary)) assertEquals(-1, key);
+    }
+
+    @Test
+    void aggregatesSeveralChunks() {
+        RegionSummary summary = new RegionSummary(0, 0);
+        summary.record(0, 0, lod(new int[][]{{1, 1}, {1, 1}}));
+        summary.record(5, 2, lod(new int[][]{{1, 0}, {0, 0}}));
+        summary.record(SIZE - 1, SIZE - 1, lod(new int[][]{{2, 2}, {2, 1}}));
+
+        int[] keys = keys(summary);
+        assertEquals(ChunkMeshBuilder.cellKey(1, ChunkLod.FULL), keys[0]);
+        assertEquals(ChunkMeshBuilder.cellKey(1, ChunkLod.solidFraction(8, 4)), keys[2 * SIZE + 5]);
+        assertEquals(ChunkMeshBuilder.cellKey(2, ChunkLod.solidFraction(20, 4)), keys[SIZE * SIZE - 1]);
+
+        int cells = 0;
+        for (int key : keys) if (key != -1) cells++;
+        assertEquals(3, cells);
+    }
+
+    @Test
+    void negativeChunksMapIntoTheirRegion() {
+        // Chunk (-1, -SIZE) is the last column, first row of region (-1, -1)
+        RegionSummary summary = new RegionSummary(-1, -1);
+        summary.record(-1, -SIZE, lod(new int[][]{{1, 1}, {1, 1}}));
+        assertEquals(ChunkMeshBuilder.cellKey(1, ChunkLod.FULL), keys(summary)[SIZE - 1]);
+    }
+
+    @Test
+    void recordingAgainReplacesTheCellAndBumpsTheVersion() {
+        RegionSummary summary = new RegionSummary(0, 0);
+        int before = summary.getVersion();
+        summary.record(1, 1, lod(new int[][]{{1, 1}, {1, 1}}));
+        summary.record(1, 1, lod(new int[][]{{2, 2}, {2, 2}}));
+
+        assertEquals(before + 2, summary.getVersion());
+        assertEquals(ChunkMeshBuilder.cellKey(2, ChunkLod.solidFraction(16, 4)), keys(summary)[SIZE + 1]);
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSetRegistryTest {
+    static final Path EXAMPLES = Paths.get("../src/examples.txt");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentFirstGetsAllSeeTheLoadedRules() throws Exception {
+        // Several rounds, each with a file no thread has loaded yet
+        for (int round = 0; round < 10; round++) {
+            Path file = dir.resolve("rules" + round + ".txt");
+            Files.copy(EXAMPLES, file);
+            String name = file.toString();
+
+            int threads = 16;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CyclicBarrier start = new CyclicBarrier(threads);
+            try {
+                List<Future<RuleSet>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return RuleSetRegistry.get(name);
+                    }));
+                }
+                RuleSet first = results.get(0).get();
+                assertNotNull(first);
+                assertTrue(first.hasExamples());
+                for (Future<RuleSet> result : results) assertSame(first, result.get());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void invalidateRereadsTheFile() throws Exception {
+        Path file = dir.resolve("changing.txt");
+        Files.copy(EXAMPLES, file);
+        RuleSet before = RuleSetRegistry.get(file.toString());
+
+        Files.writeString(file, "");
+        RuleSetRegistry.invalidate(file.toString());
+        RuleSet after = RuleSetRegistry.get(file.toString());
+
+        assertNotSame(before, after);
+        assertFalse(after.hasExamples());
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WfcSolverTest {
+
+    // Rules where any tile may sit next to any other, over tileCount tiles
+    private static CompiledWfcRules anyNextToAny(int tileCount) {
+        int words = (tileCount + 63) >>> 6;
+        long[][] compatible = new long[4][tileCount * words];
+        for (long[] table : compatible) {
+            for (int tile = 0; tile < tileCount; tile++) {
+                for (int t = 0; t < tileCount; t++) table[tile * words + (t >>> 6)] |= 1L << t;
+            }
+        }
+        double[] weights = new double[tileCount];
+        Arrays.fill(weights, 1.0);
+        return new CompiledWfcRules(tileCount, compatible, weights);
+    }
+
+    private static int[][] solve(WfcSolver solver, int size, CompiledWfcRules rules, long seed) {
+        int[][] out = new int[size][size];
+        solver.solve(size, rules, seed, new EdgeConstraints(), out);
+        return out;
+    }
+
+    @Test
+    void growingGridAfterNarrowerRulesKeepsWideMasks() {
+        CompiledWfcRules wide = anyNextToAny(100);
+        CompiledWfcRules narrow = anyNextToAny(18);
+        assertEquals(2, wide.getWords());
+        assertEquals(1, narrow.getWords());
+
+        WfcSolver solver = new WfcSolver(8, 1);
+        solve(solver, 8, wide, 1);
+        solve(solver, 8, narrow, 2);
+        int[][] out = solve(solver, 16, wide, 3);
+
+        for (int[] row : out) {
+            for (int tile : row) assertTrue(tile >= 0 && tile < 100);
+        }
+    }
+
+    @Test
+    void reusedSolverMatchesFreshSolver() {
+        CompiledWfcRules wide = anyNextToAny(100);
+        CompiledWfcRules narrow = anyNextToAny(18);
+
+        WfcSolver reused = new WfcSolver(8, 1);
+        solve(reused, 8, wide, 1);
+        solve(reused, 8, narrow, 2);
+
+        assertArrayEquals(solve(new WfcSolver(16, 2), 16, wide, 3), solve(reused, 16, wide, 3));
+    }
+}
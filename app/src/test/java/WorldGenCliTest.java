@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorldGenCliTest {
+
+    private static void generate(Path rules, Path out, int threads) throws Exception {
+        WorldGenCli cli = new WorldGenCli();
+        cli.parse(new String[]{"--seed", "11", "--rect", "0,0,5,7", "--band", "3",
+                "--rules", rules.toString(), "--threads", Integer.toString(threads), "--out", out.toString()});
+        cli.run();
+    }
+
+    @Test
+    void manyThreadsOnColdRulesWriteTheSameWorldAsOne(@TempDir Path dir) throws Exception {
+        Path rules = dir.resolve("cold.txt");
+        Files.copy(RuleSetRegistryTest.EXAMPLES, rules);
+
+        // The first run's workers all ask for the rules before anything has loaded them
+        generate(rules, dir.resolve("four"), 4);
+        generate(rules, dir.resolve("one"), 1);
+
+        ChunkGenerator generator = new ChunkGenerator(11);
+        RegionStore four = new RegionStore(dir.resolve("four"), ChunkGenerator.CHUNK_SIZE, 11);
+        RegionStore one = new RegionStore(dir.resolve("one"), ChunkGenerator.CHUNK_SIZE, 11);
+        try {
+            for (int y = 0; y <= 7; y++) {
+                for (int x = 0; x <= 5; x++) {
+                    Chunk expected = one.load(x, y, generator);
+                    Chunk actual = four.load(x, y, generator);
+                    assertNotNull(expected, "chunk " + x + "," + y);
+                    assertNotNull(actual, "chunk " + x + "," + y);
+                    assertTrue(Arrays.deepEquals(expected.getDataLayer(), actual.getDataLayer()), "chunk " + x + "," + y);
+                }
+            }
+        } finally {
+            four.close();
+            one.close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+import wfcbench.Workload;
+
+// Generating an N x N chunk area below the surface with ChunkWaveScheduler. Params: N, thread count
+public class AreaGenerationWorkload implements Workload {
+    private int area;
+    private int threads;
+    private long seed;
+
+    @Override
+    public void setUp(String... params) {
+        area = Integer.parseInt(params[0]);
+        threads = Integer.parseInt(params[1]);
+    }
+
+    @Override
+    public Object run() throws InterruptedException {
+        ChunkGenerator generator = new ChunkGenerator(seed++);
+        new ChunkWaveScheduler(generator, threads).generate(0, 4, area - 1, area + 3);
+        return generator;
+    }
+}
@@ -0,0 +1,22 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Finds the rule files in src/ whether the benchmarks run from the repository root or from benchmarks/
+final class BenchmarkFiles {
+    private BenchmarkFiles() {
+    }
+
+    static String ruleFile(String name) {
+        for (String dir : new String[]{"src", "../src"}) {
+            Path path = Paths.get(dir, name);
+            if (Files.exists(path)) return path.toString();
+        }
+        throw new IllegalStateException("Rule file " + name + " not found; run the benchmarks from the repository root");
+    }
+
+    static String read(String name) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(ruleFile(name))));
+    }
+}
@@ -0,0 +1,41 @@
+import wfcbench.Workload;
+
+// ChunkGenerator.grabChunk. Params: "hit" (the chunk is loaded, an index lookup) or "miss" (it is generated)
+public class ChunkLookupWorkload implements Workload {
+    private static final int LOADED = 64;
+
+    private boolean hit;
+    private ChunkGenerator generator;
+    private int next;
+
+    @Override
+    public void setUp(String... params) {
+        hit = params[0].equals("hit");
+        if (hit) {
+            generator = new ChunkGenerator(1);
+            for (int y = 0; y < LOADED; y++)
+                for (int x = 0; x < LOADED; x++)
+                    generator.grabChunk(x, y);
+        }
+    }
+
+    // A new world every iteration keeps the miss path from filling the heap
+    @Override
+    public void beforeIteration() {
+        if (!hit) {
+            generator = new ChunkGenerator(2);
+            next = 0;
+        }
+    }
+
+    @Override
+    public Object run() {
+        int i = next++;
+        if (hit) {
+            i &= LOADED * LOADED - 1;
+            return generator.grabChunk(i % LOADED, i / LOADED);
+        }
+        // Walks a band of rows below the surface, so every call solves a chunk
+        return generator.grabChunk(i >> 3, 4 + (i & 7));
+    }
+}
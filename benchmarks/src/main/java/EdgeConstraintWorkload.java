@@ -0,0 +1,43 @@
+import wfcbench.Workload;
+
+// Setting up a solve (wave reset plus edge propagation). Params: grid size, rule file name, "all" or "none"
+public class EdgeConstraintWorkload implements Workload {
+    private int size;
+    private CompiledWfcRules rules;
+    private WfcSolver solver;
+    private EdgeConstraints edges;
+    private long seed;
+
+    @Override
+    public void setUp(String... params) {
+        size = Integer.parseInt(params[0]);
+        rules = RuleSetRegistry.get(BenchmarkFiles.ruleFile(params[1])).getRules();
+        solver = new WfcSolver(size, rules.getWords());
+        edges = new EdgeConstraints();
+        if (params[2].equals("all")) fillFromNeighbours();
+    }
+
+    // Edges taken from solved neighbours, as an odd-parity chunk sees them
+    private void fillFromNeighbours() {
+        EdgeConstraints none = new EdgeConstraints();
+        int[][] neighbour = new int[size][size];
+        int[][] sides = {edges.setTopEdge(size), edges.setBottomEdge(size), edges.setLeftEdge(size), edges.setRightEdge(size)};
+        for (int side = 0; side < 4; side++) {
+            solver.solve(size, rules, side, none, neighbour);
+            for (int i = 0; i < size; i++) {
+                switch (side) {
+                    case 0: sides[side][i] = neighbour[size - 1][i]; break;
+                    case 1: sides[side][i] = neighbour[0][i]; break;
+                    case 2: sides[side][i] = neighbour[i][size - 1]; break;
+                    default: sides[side][i] = neighbour[i][0]; break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object run() {
+        solver.begin(size, rules, seed++, edges);
+        return solver;
+    }
+}
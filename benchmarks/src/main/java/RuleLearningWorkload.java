@@ -0,0 +1,36 @@
+import wfcbench.Workload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rule learning on one rule file. Params: rule file name, then "learn", "compile" or "parse"
+public class RuleLearningWorkload implements Workload {
+    private String text;
+    private List<int[][]> examples;
+    private String stage;
+
+    @Override
+    public void setUp(String... params) throws Exception {
+        text = BenchmarkFiles.read(params[0]);
+        examples = RuleSet.parseExamples(text, new ArrayList<>());
+        stage = params[1];
+    }
+
+    @Override
+    public Object run() {
+        switch (stage) {
+            case "learn":
+                return learn();
+            case "compile":
+                return learn().compile();
+            default:
+                return RuleSet.parseExamples(text, new ArrayList<>());
+        }
+    }
+
+    private WfcRules learn() {
+        WfcRules rules = new WfcRules(RuleSet.MAX_TILE_ID);
+        for (int[][] example : examples) rules.learnFromExample(example);
+        return rules;
+    }
+}
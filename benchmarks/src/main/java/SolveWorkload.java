@@ -0,0 +1,25 @@
+import wfcbench.Workload;
+
+// WfcSolver.solve() of an unconstrained grid. Params: grid size, rule file name
+public class SolveWorkload implements Workload {
+    private int size;
+    private CompiledWfcRules rules;
+    private WfcSolver solver;
+    private final EdgeConstraints noEdges = new EdgeConstraints();
+    private int[][] out;
+    private long seed;
+
+    @Override
+    public void setUp(String... params) {
+        size = Integer.parseInt(params[0]);
+        rules = RuleSetRegistry.get(BenchmarkFiles.ruleFile(params[1])).getRules();
+        solver = new WfcSolver(size, rules.getWords());
+        out = new int[size][size];
+    }
+
+    @Override
+    public Object run() {
+        solver.solve(size, rules, seed++, noEdges, out);
+        return out;
+    }
+}
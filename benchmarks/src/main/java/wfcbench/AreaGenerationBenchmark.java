@@ -0,0 +1,33 @@
+package wfcbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// End-to-end generation of an N x N chunk area with ChunkWaveScheduler
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AreaGenerationBenchmark {
+
+    @Param({"8", "32"})
+    String area;
+
+    @Param({"1", "4"})
+    String threads;
+
+    private Workload generate;
+
+    @Setup
+    public void setUp() throws Exception {
+        generate = Workload.load("AreaGenerationWorkload", area, threads);
+    }
+
+    @Benchmark
+    public Object generateArea() throws Exception {
+        return generate.run();
+    }
+}
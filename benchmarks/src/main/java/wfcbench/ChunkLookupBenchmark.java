@@ -0,0 +1,39 @@
+package wfcbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// ChunkGenerator.grabChunk for a loaded chunk and for one that has to be generated
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkLookupBenchmark {
+
+    private Workload hit;
+    private Workload miss;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        hit = Workload.load("ChunkLookupWorkload", "hit");
+        miss = Workload.load("ChunkLookupWorkload", "miss");
+    }
+
+    @Setup(Level.Iteration)
+    public void beforeIteration() {
+        miss.beforeIteration();
+    }
+
+    @Benchmark
+    public Object grabHit() throws Exception {
+        return hit.run();
+    }
+
+    @Benchmark
+    public Object grabMiss() throws Exception {
+        return miss.run();
+    }
+}
@@ -0,0 +1,40 @@
+package wfcbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Setting up a solve with all four edges constrained, against a baseline with none
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EdgeConstraintBenchmark {
+
+    @Param({"8", "32"})
+    String size;
+
+    @Param({"examples.txt", "caves.txt"})
+    String ruleSet;
+
+    private Workload allEdges;
+    private Workload noEdges;
+
+    @Setup
+    public void setUp() throws Exception {
+        allEdges = Workload.load("EdgeConstraintWorkload", size, ruleSet, "all");
+        noEdges = Workload.load("EdgeConstraintWorkload", size, ruleSet, "none");
+    }
+
+    @Benchmark
+    public Object allFourEdges() throws Exception {
+        return allEdges.run();
+    }
+
+    @Benchmark
+    public Object noEdges() throws Exception {
+        return noEdges.run();
+    }
+}
@@ -0,0 +1,44 @@
+package wfcbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// WfcRules.learnFromExample over every example of a rule file, plus compiling and text parsing
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleLearningBenchmark {
+
+    @Param({"examples.txt", "caves.txt"})
+    String ruleSet;
+
+    private Workload learn;
+    private Workload compile;
+    private Workload parse;
+
+    @Setup
+    public void setUp() throws Exception {
+        learn = Workload.load("RuleLearningWorkload", ruleSet, "learn");
+        compile = Workload.load("RuleLearningWorkload", ruleSet, "compile");
+        parse = Workload.load("RuleLearningWorkload", ruleSet, "parse");
+    }
+
+    @Benchmark
+    public Object learnFromExample() throws Exception {
+        return learn.run();
+    }
+
+    @Benchmark
+    public Object learnAndCompile() throws Exception {
+        return compile.run();
+    }
+
+    @Benchmark
+    public Object parseExamples() throws Exception {
+        return parse.run();
+    }
+}
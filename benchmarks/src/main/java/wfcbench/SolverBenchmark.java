@@ -0,0 +1,33 @@
+package wfcbench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// One full WfcSolver.solve() of an unconstrained grid
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+
+    @Param({"8", "16", "32"})
+    String size;
+
+    @Param({"examples.txt", "caves.txt"})
+    String ruleSet;
+
+    private Workload solve;
+
+    @Setup
+    public void setUp() throws Exception {
+        solve = Workload.load("SolveWorkload", size, ruleSet);
+    }
+
+    @Benchmark
+    public Object solve() throws Exception {
+        return solve.run();
+    }
+}
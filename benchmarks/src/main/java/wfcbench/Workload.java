@@ -0,0 +1,23 @@
+package wfcbench;
+
+// The measured code lives in the default package, which JMH benchmarks (and any named package) cannot
+// reference. Each operation is therefore wrapped in a default-package class implementing this interface,
+// loaded by name once per trial; the call in the benchmark loop is a plain monomorphic interface call.
+public interface Workload {
+
+    // Builds the workload from the benchmark's @Param values
+    void setUp(String... params) throws Exception;
+
+    // Called before every measurement iteration
+    default void beforeIteration() {
+    }
+
+    // The measured operation; the result goes to a Blackhole
+    Object run() throws Exception;
+
+    static Workload load(String className, String... params) throws Exception {
+        Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+        workload.setUp(params);
+        return workload;
+    }
+}
@@ -1,11 +1,6 @@
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Scanner;
-import java.util.Random;
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 public class Chunk {
 
@@ -14,38 +9,88 @@ public class Chunk {
     public int xWorldLocation;
     public int yWorldLocation;
 
-    public int[][] dataLayer;
-    public int[][] renderLayer;
+    // Palette-compressed tiles; chunks above the surface share one all-air layer
+    private TileLayer dataLayer;
 
     // Opening system
     public Set<Direction> openings;
 
+    // Zoomed-out summaries of dataLayer
+    private ChunkLod lod;
+
+    // Recovery counters of the WFC solve that produced dataLayer, null if the chunk was not solved
+    private SolveStats solveStats;
+
     public enum Direction {
         TOP, BOTTOM, LEFT, RIGHT
     }
 
+    private static final Direction[] ALL_DIRECTIONS = Direction.values();
+
+    // Independent random streams per chunk, so a chunk can be dropped and rebuilt identically
+    private static final long OPENINGS_STREAM = 1;
+    private static final long TERRAIN_STREAM = 2;
+
+    // Access stamp from ChunkGenerator's clock, used to pick eviction victims
+    volatile long lastAccess;
+
+    // Mesh built on a generation worker, waiting for the renderer to upload it. Only chunks requested
+    // while visible get one and it is dropped once taken, so it is not part of estimateBytes.
+    private volatile ChunkMesh pendingMesh;
+    private volatile boolean meshTaken;
+
+    // Solve carried on by solveSlice for chunks built a slice at a time, and the cells it has decided so
+    // far for drawing. Unused once the chunk is solved.
+    private boolean solved;
+    private WfcSolver slicedSolver;
+    private ChunkSolveEvent slicedEvent;
+    private long slicedNanos;
+    private volatile TileLayer partialLayer;
+    private volatile int partialVersion;
+
     public Chunk(int x, int y, ChunkGenerator chunkGenerator) {
-        dataLayer = new int[ChunkGenerator.CHUNK_SIZE][ChunkGenerator.CHUNK_SIZE];
-        renderLayer = new int[ChunkGenerator.CHUNK_SIZE][ChunkGenerator.CHUNK_SIZE];
+        this(x, y, chunkGenerator, true);
+    }
+
+    private Chunk(int x, int y, ChunkGenerator chunkGenerator, boolean solveNow) {
+        dataLayer = TileLayer.uniform(ChunkGenerator.CHUNK_SIZE, 0);
         xWorldLocation = x;
         yWorldLocation = y;
         parent = chunkGenerator;
-        openings = new HashSet<>();
+        openings = EnumSet.noneOf(Direction.class);
         generateOpenings();
-        if (y>3) {
+        solved = y <= 3;
+        if (!solved && solveNow) {
             randomizeDataLayer();
+            solved = true;
         }
+        lod = ChunkLod.build(dataLayer);
+    }
+
+    // A chunk with its openings set whose terrain is left to solveSlice. The neighbours it depends on
+    // should exist already, otherwise they are generated in one go here.
+    static Chunk unsolved(int x, int y, ChunkGenerator chunkGenerator) {
+        return new Chunk(x, y, chunkGenerator, false);
+    }
+
+    // A chunk restored from a RegionStore; nothing is generated
+    Chunk(int x, int y, ChunkGenerator chunkGenerator, TileLayer dataLayer, Set<Direction> openings) {
+        this.dataLayer = dataLayer;
+        xWorldLocation = x;
+        yWorldLocation = y;
+        parent = chunkGenerator;
+        this.openings = openings;
+        lod = ChunkLod.build(dataLayer);
     }
 
     void generateOpenings() {
-        Random rand = new Random();
-        Direction[] allDirections = Direction.values();
+        SplittableRandom rand = parent.chunkRandom(xWorldLocation, yWorldLocation, OPENINGS_STREAM);
 
         // Check adjacent chunks for required openings
-        Chunk topChunk = parent.getChunkIfExists(xWorldLocation, yWorldLocation - 1);
-        Chunk bottomChunk = parent.getChunkIfExists(xWorldLocation, yWorldLocation + 1);
-        Chunk leftChunk = parent.getChunkIfExists(xWorldLocation - 1, yWorldLocation);
-        Chunk rightChunk = parent.getChunkIfExists(xWorldLocation + 1, yWorldLocation);
+        Chunk topChunk = dependency(xWorldLocation, yWorldLocation - 1);
+        Chunk bottomChunk = dependency(xWorldLocation, yWorldLocation + 1);
+        Chunk leftChunk = dependency(xWorldLocation - 1, yWorldLocation);
+        Chunk rightChunk = dependency(xWorldLocation + 1, yWorldLocation);
 
         // Match openings with adjacent chunks
         if (topChunk != null && topChunk.openings.contains(Direction.BOTTOM)) {
@@ -64,26 +109,22 @@ public class Chunk {
         // If no forced openings, randomly generate 1-4 openings
         if (openings.isEmpty()) {
             int numOpenings = rand.nextInt(4) + 1; // 1 to 4 openings
-            ArrayList<Direction> availableDirections = new ArrayList<>(Arrays.asList(allDirections));
 
             for (int i = 0; i < numOpenings; i++) {
-                if (!availableDirections.isEmpty()) {
-                    int index = rand.nextInt(availableDirections.size());
-                    openings.add(availableDirections.remove(index));
+                // Pick the index-th direction that is not open yet
+                int index = rand.nextInt(ALL_DIRECTIONS.length - i);
+                for (Direction dir : ALL_DIRECTIONS) {
+                    if (openings.contains(dir)) continue;
+                    if (index-- == 0) {
+                        openings.add(dir);
+                        break;
+                    }
                 }
             }
         } else {
-            // Add additional random openings (optional)
-            ArrayList<Direction> availableDirections = new ArrayList<>();
-            for (Direction dir : allDirections) {
-                if (!openings.contains(dir)) {
-                    availableDirections.add(dir);
-                }
-            }
-
-            // 50% chance to add each additional opening
-            for (Direction dir : availableDirections) {
-                if (rand.nextBoolean()) {
+            // Add additional random openings (optional), 50% chance for each direction not open yet
+            for (Direction dir : ALL_DIRECTIONS) {
+                if (!openings.contains(dir) && rand.nextBoolean()) {
                     openings.add(dir);
                 }
             }
@@ -91,117 +132,156 @@ public class Chunk {
     }
 
     public void randomizeDataLayer() {
-        Random rand = new Random(parent.hashCode() + xWorldLocation * 9187L + yWorldLocation * 4513L);
+        SplittableRandom rand = parent.chunkRandom(xWorldLocation, yWorldLocation, TERRAIN_STREAM);
         int size = ChunkGenerator.CHUNK_SIZE;
 
-        ArrayList<int[][]> examples = loadExamplesFromFile("src/examples.txt");
+        RuleSet ruleSet = parent.ruleSetFor(xWorldLocation, yWorldLocation);
+
+        WfcSolver solver = WfcSolver.forCurrentThread();
+        int[][] tiles = solver.outputGrid(size);
 
-        if (examples.isEmpty()) {
-            System.err.println("No examples found! Falling back to random terrain.");
+        if (!ruleSet.hasExamples()) {
             for (int y = 0; y < size; y++)
                 for (int x = 0; x < size; x++)
-                    dataLayer[y][x] = rand.nextInt(17);
+                    tiles[y][x] = rand.nextInt(17);
+            dataLayer = TileLayer.pack(tiles, size);
             return;
         }
 
-        WfcRules rules = new WfcRules(17);
-        for (int[][] ex : examples) {
-            rules.learnFromExample(ex);
+        // Get edge constraints from adjacent chunks
+        EdgeConstraints constraints = solver.edgeConstraints();
+        fillEdgeConstraints(constraints);
+
+        ChunkSolveEvent event = new ChunkSolveEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        // Chunks bigger than one sub-solve tile are solved in overlapping tiles
+        LargeGridSolver large = LargeGridSolver.forCurrentThread();
+        if (size > large.getTileSize()) {
+            large.solve(size, ruleSet.getRules(), rand.nextLong(), constraints, tiles);
+            solveStats = large.getStats().copy();
+        } else {
+            solver.solve(size, ruleSet.getRules(), rand.nextLong(), constraints, tiles);
+            solveStats = solver.getStats().copy();
         }
+        GenerationMetrics.recordSolve(System.nanoTime() - start, solveStats);
+        event.commit(xWorldLocation, yWorldLocation, size, solveStats);
+        dataLayer = TileLayer.pack(tiles, size);
+    }
 
-        // Get edge constraints from adjacent chunks
-        EdgeConstraints constraints = getEdgeConstraints();
+    // Carries the terrain solve of an unsolved chunk on for about nanos; returns true once the chunk is
+    // solved, with the same tiles the constructor would have produced. solver holds the solve between
+    // calls, so it must not be used for anything else until then.
+    boolean solveSlice(WfcSolver solver, long nanos) {
+        if (solved) return true;
+        long start = System.nanoTime();
+        int size = ChunkGenerator.CHUNK_SIZE;
+
+        if (slicedSolver == null) {
+            SplittableRandom rand = parent.chunkRandom(xWorldLocation, yWorldLocation, TERRAIN_STREAM);
+            RuleSet ruleSet = parent.ruleSetFor(xWorldLocation, yWorldLocation);
+
+            // Random fill and tiled solves of big chunks are not resumable; they are done in one go
+            if (!ruleSet.hasExamples() || size > LargeGridSolver.forCurrentThread().getTileSize()) {
+                randomizeDataLayer();
+                return finishSolve();
+            }
+
+            EdgeConstraints constraints = solver.edgeConstraints();
+            fillEdgeConstraints(constraints);
+            slicedEvent = new ChunkSolveEvent();
+            slicedEvent.begin();
+            solver.begin(size, ruleSet.getRules(), rand.nextLong(), constraints);
+            slicedSolver = solver;
+        }
+
+        boolean done = slicedSolver.runFor(nanos);
+        int[][] tiles = slicedSolver.outputGrid(size);
+        if (!done) {
+            slicedSolver.peek(tiles, 0);
+            partialLayer = TileLayer.pack(tiles, size);
+            partialVersion++;
+            slicedNanos += System.nanoTime() - start;
+            return false;
+        }
+
+        slicedSolver.finish(tiles);
+        solveStats = slicedSolver.getStats().copy();
+        slicedNanos += System.nanoTime() - start;
+        GenerationMetrics.recordSolve(slicedNanos, solveStats);
+        slicedEvent.commit(xWorldLocation, yWorldLocation, size, solveStats);
+        dataLayer = TileLayer.pack(tiles, size);
+        slicedSolver = null;
+        slicedEvent = null;
+        return finishSolve();
+    }
+
+    private boolean finishSolve() {
+        solved = true;
+        partialLayer = null;
+        lod = ChunkLod.build(dataLayer);
+        return true;
+    }
 
-        WfcSolver solver = new WfcSolver(size, rules, rand, constraints);
-        dataLayer = solver.solve();
+    // The decided cells of a chunk still being solved a slice at a time, undecided ones as air; null
+    // before the first slice and once solved. getPartialVersion changes whenever it does.
+    TileLayer getPartialLayer() {
+        return partialLayer;
     }
 
-    private EdgeConstraints getEdgeConstraints() {
-        EdgeConstraints constraints = new EdgeConstraints();
+    int getPartialVersion() {
+        return partialVersion;
+    }
+
+    private void fillEdgeConstraints(EdgeConstraints constraints) {
         int size = ChunkGenerator.CHUNK_SIZE;
 
-        Chunk topChunk = parent.getChunkIfExists(xWorldLocation, yWorldLocation - 1);
-        Chunk bottomChunk = parent.getChunkIfExists(xWorldLocation, yWorldLocation + 1);
-        Chunk leftChunk = parent.getChunkIfExists(xWorldLocation - 1, yWorldLocation);
-        Chunk rightChunk = parent.getChunkIfExists(xWorldLocation + 1, yWorldLocation);
+        Chunk topChunk = dependency(xWorldLocation, yWorldLocation - 1);
+        Chunk bottomChunk = dependency(xWorldLocation, yWorldLocation + 1);
+        Chunk leftChunk = dependency(xWorldLocation - 1, yWorldLocation);
+        Chunk rightChunk = dependency(xWorldLocation + 1, yWorldLocation);
 
         if (topChunk != null) {
-            constraints.topEdge = new int[size];
+            constraints.setTopEdge(size);
             for (int x = 0; x < size; x++) {
-                constraints.topEdge[x] = topChunk.dataLayer[size - 1][x];
+                constraints.topEdge[x] = topChunk.getTile(x, size - 1);
             }
         }
 
         if (bottomChunk != null) {
-            constraints.bottomEdge = new int[size];
+            constraints.setBottomEdge(size);
             for (int x = 0; x < size; x++) {
-                constraints.bottomEdge[x] = bottomChunk.dataLayer[0][x];
+                constraints.bottomEdge[x] = bottomChunk.getTile(x, 0);
             }
         }
 
         if (leftChunk != null) {
-            constraints.leftEdge = new int[size];
+            constraints.setLeftEdge(size);
             for (int y = 0; y < size; y++) {
-                constraints.leftEdge[y] = leftChunk.dataLayer[y][size - 1];
+                constraints.leftEdge[y] = leftChunk.getTile(size - 1, y);
             }
         }
 
         if (rightChunk != null) {
-            constraints.rightEdge = new int[size];
+            constraints.setRightEdge(size);
             for (int y = 0; y < size; y++) {
-                constraints.rightEdge[y] = rightChunk.dataLayer[y][0];
+                constraints.rightEdge[y] = rightChunk.getTile(0, y);
             }
         }
-
-        return constraints;
     }
 
-    private ArrayList<int[][]> loadExamplesFromFile(String filename) {
-        ArrayList<int[][]> examples = new ArrayList<>();
-
-        try (Scanner scanner = new Scanner(new FileReader(filename))) {
-            ArrayList<int[]> current = new ArrayList<>();
-
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine().trim();
-
-                if (line.isEmpty() || line.startsWith("#")) continue;
-
-                if (line.equals("---")) {
-                    if (!current.isEmpty()) {
-                        int[][] example = new int[current.size()][];
-                        for (int i = 0; i < current.size(); i++)
-                            example[i] = current.get(i);
-                        examples.add(example);
-                        current.clear();
-                    }
-                    continue;
-                }
-
-                String[] parts = line.split("\\s+");
-                int[] row = new int[parts.length];
-                for (int i = 0; i < parts.length; i++) {
-                    try {
-                        row[i] = Integer.parseInt(parts[i]);
-                    } catch (NumberFormatException e) {
-                        row[i] = 0; // default fallback
-                    }
-                }
-                current.add(row);
-            }
-
-            if (!current.isEmpty()) {
-                int[][] example = new int[current.size()][];
-                for (int i = 0; i < current.size(); i++)
-                    example[i] = current.get(i);
-                examples.add(example);
-            }
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    // Only chunks on odd checkerboard squares read their neighbours, and those neighbours never read
+    // anything, so a chunk's content does not depend on the order chunks were generated in.
+    // A neighbour that was evicted in the meantime is simply rebuilt.
+    private Chunk dependency(int atX, int atY) {
+        if (!ChunkGenerator.dependsOnNeighbours(xWorldLocation, yWorldLocation)) return null;
+        return parent.grabChunk(atX, atY);
+    }
 
-        return examples;
+    // Rough heap footprint of this chunk, for ChunkGenerator's memory budget
+    public long estimateBytes() {
+        return 104 + dataLayer.estimateBytes() + lod.estimateBytes();
     }
 
     @Override
@@ -209,77 +289,45 @@ public class Chunk {
         return "Chunk(x=" + xWorldLocation + ",y=" + yWorldLocation + ", openings=" + openings + ")";
     }
 
-    public int[][] getDataLayer() {
-        return dataLayer;
+    public int getTile(int x, int y) {
+        return dataLayer.get(x, y);
     }
 
-    public int[][] getRenderLayer() {
-        return renderLayer;
+    // The renderer may already have drawn the chunk once it is published; whichever side writes its
+    // flag second sees the other's, so a mesh is never left behind unused
+    void buildMesh() {
+        if (meshTaken) return;
+        pendingMesh = ChunkMeshBuilder.forCurrentThread().build(dataLayer);
+        if (meshTaken) pendingMesh = null;
     }
 
-    public Set<Direction> getOpenings() {
-        return openings;
+    // The prebuilt mesh if there is one, otherwise a mesh built now on the calling thread
+    ChunkMesh takeMesh() {
+        meshTaken = true;
+        ChunkMesh mesh = pendingMesh;
+        if (mesh == null) return ChunkMeshBuilder.forCurrentThread().build(dataLayer);
+        pendingMesh = null;
+        return mesh;
     }
-}
 
-// Container for edge constraints
-class EdgeConstraints {
-    public int[] topEdge = null;
-    public int[] bottomEdge = null;
-    public int[] leftEdge = null;
-    public int[] rightEdge = null;
-}
+    public ChunkLod getLod() {
+        return lod;
+    }
 
-class WfcRules {
-    private final ArrayList<Set<Integer>> northRules = new ArrayList<>();
-    private final ArrayList<Set<Integer>> southRules = new ArrayList<>();
-    private final ArrayList<Set<Integer>> eastRules = new ArrayList<>();
-    private final ArrayList<Set<Integer>> westRules = new ArrayList<>();
-    public int numberOfRules;
-
-    public WfcRules(int x) {
-        numberOfRules = x;
-        for (int i = 0; i <= x; i++) {
-            northRules.add(new HashSet<>());
-            southRules.add(new HashSet<>());
-            eastRules.add(new HashSet<>());
-            westRules.add(new HashSet<>());
-        }
+    public TileLayer getTileLayer() {
+        return dataLayer;
     }
 
-    public void learnFromExample(int[][] example) {
-        int h = example.length;
-        int w = example[0].length;
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int tile = example[y][x];
-
-                if (y > 0)
-                    northRules.get(tile).add(example[y - 1][x]);
-                if (y < h - 1)
-                    southRules.get(tile).add(example[y + 1][x]);
-                if (x > 0)
-                    westRules.get(tile).add(example[y][x - 1]);
-                if (x < w - 1)
-                    eastRules.get(tile).add(example[y][x + 1]);
-            }
-        }
+    // Unpacked copy of the tiles, indexed [y][x]
+    public int[][] getDataLayer() {
+        return dataLayer.toArray();
     }
 
-    public boolean isAllowed(int tile, int neighbor, int dx, int dy) {
-        if (dx == 1) return eastRules.get(tile).contains(neighbor);
-        if (dx == -1) return westRules.get(tile).contains(neighbor);
-        if (dy == 1) return southRules.get(tile).contains(neighbor);
-        if (dy == -1) return northRules.get(tile).contains(neighbor);
-        return true;
+    public Set<Direction> getOpenings() {
+        return openings;
     }
 
-    public Set<Integer> getAllowedNeighbors(int tile, int dx, int dy) {
-        if (dx == 1) return eastRules.get(tile);
-        if (dx == -1) return westRules.get(tile);
-        if (dy == 1) return southRules.get(tile);
-        if (dy == -1) return northRules.get(tile);
-        return new HashSet<>();
+    public SolveStats getSolveStats() {
+        return solveStats;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,242 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generates chunks on a pool of worker threads so the render thread never runs a WFC solve.
+// Queued requests are ordered by distance to the focus chunk (the one under the camera).
+//
+// With zero threads nothing runs on its own: the owner calls runFor once a frame, which advances the
+// queued chunks a slice at a time for a bounded time, and getPartialChunk exposes the one being solved.
+public class ChunkGenerationService {
+
+    private final ChunkGenerator generator;
+    // Null when generating through runFor
+    private final ThreadPoolExecutor executor;
+    private final PriorityQueue<Task> sliceQueue = new PriorityQueue<>();
+    private final SlicedChunkBuilder slicedBuilder;
+    private Task slicing;
+    private final Map<Long, Task> pending = new ConcurrentHashMap<>();
+    // Chunks whose generation threw, with the error; they are reported once and never retried
+    private final Map<Long, Throwable> failed = new ConcurrentHashMap<>();
+    private final AtomicLong submitOrder = new AtomicLong();
+
+    private volatile int focusX, focusY;
+
+    public ChunkGenerationService(ChunkGenerator generator, int threads) {
+        this.generator = generator;
+        if (threads == 0) {
+            executor = null;
+            slicedBuilder = new SlicedChunkBuilder(generator);
+            return;
+        }
+        slicedBuilder = null;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "chunk-generator-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.prestartAllCoreThreads();
+    }
+
+    public static int defaultThreadCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    // Schedules generation of the chunk unless it exists, is already pending or has failed
+    public CompletableFuture<Chunk> request(int atX, int atY) {
+        return request(atX, atY, false);
+    }
+
+    // As request, and with buildMesh the worker also meshes the chunk, for chunks about to be drawn
+    // tile by tile. Other chunks are meshed when first drawn, so undrawn ones never hold a mesh.
+    public CompletableFuture<Chunk> request(int atX, int atY, boolean buildMesh) {
+        Chunk existing = generator.getChunkIfExists(atX, atY);
+        if (existing != null) return CompletableFuture.completedFuture(existing);
+
+        long key = key(atX, atY);
+        Throwable failure = failed.get(key);
+        if (failure != null) return CompletableFuture.failedFuture(failure);
+
+        Task task = pending.get(key);
+        if (task != null) return task.future;
+
+        task = new Task(atX, atY, buildMesh);
+        Task raced = pending.putIfAbsent(key, task);
+        if (raced != null) return raced.future;
+
+        if (executor == null) {
+            synchronized (sliceQueue) {
+                sliceQueue.add(task);
+            }
+        } else {
+            executor.execute(task);
+        }
+        return task.future;
+    }
+
+    public boolean isSliced() {
+        return executor == null;
+    }
+
+    // Advances queued chunks, nearest first, for about nanos on the calling thread; returns how many were
+    // finished. A chunk is worked on until it is done, even if its request is cancelled meanwhile.
+    public int runFor(long nanos) {
+        if (executor != null) throw new IllegalStateException("Chunks are generated by worker threads");
+        long deadline = System.nanoTime() + nanos;
+        int finished = 0;
+        while (System.nanoTime() - deadline < 0) {
+            if (slicing == null) {
+                synchronized (sliceQueue) {
+                    slicing = sliceQueue.poll();
+                }
+                if (slicing == null) break;
+            }
+            if (!slicing.runSlice(deadline)) break;
+            slicing = null;
+            finished++;
+        }
+        return finished;
+    }
+
+    // The chunk at (atX, atY) while it is being solved by runFor, with its decided cells so far
+    public Chunk getPartialChunk(int atX, int atY) {
+        return slicedBuilder == null ? null : slicedBuilder.getSolving(atX, atY);
+    }
+
+    public boolean isPending(int atX, int atY) {
+        return pending.containsKey(key(atX, atY));
+    }
+
+    public boolean isFailed(int atX, int atY) {
+        return failed.containsKey(key(atX, atY));
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // Moves the focus chunk and re-sorts the queued requests around it
+    public void setFocus(int chunkX, int chunkY) {
+        if (chunkX == focusX && chunkY == focusY) return;
+        focusX = chunkX;
+        focusY = chunkY;
+
+        if (executor == null) {
+            synchronized (sliceQueue) {
+                ArrayList<Task> queued = new ArrayList<>(sliceQueue);
+                sliceQueue.clear();
+                for (Task task : queued) task.updatePriority();
+                sliceQueue.addAll(queued);
+            }
+            return;
+        }
+
+        ArrayList<Runnable> queued = new ArrayList<>();
+        executor.getQueue().drainTo(queued);
+        for (Runnable r : queued) ((Task) r).updatePriority();
+        executor.getQueue().addAll(queued);
+    }
+
+    // Cancels queued requests for chunks outside [minX..maxX] x [minY..maxY]; running ones finish normally
+    public void cancelOutside(int minX, int minY, int maxX, int maxY) {
+        for (Task task : pending.values()) {
+            if (task.x >= minX && task.x <= maxX && task.y >= minY && task.y <= maxY) continue;
+
+            if (dequeue(task)) {
+                pending.remove(key(task.x, task.y), task);
+                task.future.cancel(false);
+            }
+        }
+    }
+
+    private boolean dequeue(Task task) {
+        if (executor != null) return executor.remove(task);
+        synchronized (sliceQueue) {
+            return sliceQueue.remove(task);
+        }
+    }
+
+    public void shutdown() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private class Task implements Runnable, Comparable<Task> {
+        final int x, y;
+        final boolean buildMesh;
+        final long order;
+        final CompletableFuture<Chunk> future = new CompletableFuture<>();
+        long priority;
+
+        Task(int x, int y, boolean buildMesh) {
+            this.x = x;
+            this.y = y;
+            this.buildMesh = buildMesh;
+            this.order = submitOrder.incrementAndGet();
+            updatePriority();
+        }
+
+        void updatePriority() {
+            long dx = x - focusX;
+            long dy = y - focusY;
+            priority = dx * dx + dy * dy;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int c = Long.compare(priority, other.priority);
+            return c != 0 ? c : Long.compare(order, other.order);
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) return;
+
+            // The chunk builds the neighbours it depends on itself, so no ordering is needed here
+            try {
+                Chunk chunk = generator.grabChunk(x, y);
+                // Chunks about to be drawn get their mesh here rather than on the render thread
+                if (buildMesh) chunk.buildMesh();
+                future.complete(chunk);
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                pending.remove(key(x, y), this);
+            }
+        }
+
+        // One slice of this chunk for runFor; true once it is done
+        boolean runSlice(long deadlineNanos) {
+            if (future.isDone()) return true;
+            try {
+                Chunk chunk = slicedBuilder.advance(x, y, deadlineNanos);
+                if (chunk == null) return false;
+                future.complete(chunk);
+            } catch (Throwable t) {
+                slicedBuilder.abandon();
+                fail(t);
+            }
+            pending.remove(key(x, y), this);
+            return true;
+        }
+
+        // Recorded before the future completes, so whoever sees the failure sees the chunk as failed and
+        // no longer pending
+        private void fail(Throwable t) {
+            failed.put(key(x, y), t);
+            pending.remove(key(x, y), this);
+            System.err.println("Generating chunk (" + x + ", " + y + ") failed, it will not be retried");
+            t.printStackTrace();
+            future.completeExceptionally(t);
+        }
+    }
+}
@@ -1,70 +1,259 @@
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class ChunkGenerator {
 
-    public Chunk spawnChunk;
-    public boolean firstChunkSpawned;
+    // The first chunk ever published
+    public volatile Chunk spawnChunk;
+    public volatile boolean firstChunkSpawned;
 
-    Map<Integer, Map<Integer, Chunk>> generatedChunksMap;
-    ArrayList<Chunk> allChunksList;
+    private final ChunkIndex generatedChunks;
 
     public static int CHUNK_SIZE = 8;
+    public static final String DEFAULT_RULE_SET = "src/examples.txt";
+
+    // Rule file used from each starting chunk row downwards
+    private final ConcurrentSkipListMap<Integer, String> ruleSetBands;
+
+    private final long worldSeed;
+
+    // Memory budget: once either limit is exceeded, least recently used chunks away from the
+    // camera are evicted down to EVICTION_TARGET of the limits. Evicted chunks regenerate identically.
+    private static final double EVICTION_TARGET = 0.9;
+    private volatile int maxLoadedChunks = Integer.MAX_VALUE;
+    private volatile long maxLoadedBytes = Long.MAX_VALUE;
+    private final AtomicLong loadedBytes = new AtomicLong();
+    private volatile long accessClock;
+
+    // LOD aggregates per ChunkIndex region, kept when chunks are evicted. At most maxRegionSummaries are
+    // kept (about 2.3 KB each); beyond that the regions farthest from the focus are dropped.
+    public static final int DEFAULT_MAX_REGION_SUMMARIES = 1024;
+    private final ConcurrentHashMap<Long, RegionSummary> regionSummaries = new ConcurrentHashMap<>();
+    private volatile int maxRegionSummaries = DEFAULT_MAX_REGION_SUMMARIES;
+
+    // Where generated chunks are saved and looked up before solving; null keeps the world in memory only
+    private volatile RegionStore regionStore;
 
     public ChunkGenerator() {
-        generatedChunksMap = new HashMap<>();
-        allChunksList = new ArrayList<>();
+        this(System.nanoTime());
+    }
+
+    public ChunkGenerator(long worldSeed) {
+        this.worldSeed = worldSeed;
+        generatedChunks = new ChunkIndex();
         firstChunkSpawned = false;
+        ruleSetBands = new ConcurrentSkipListMap<>();
+        ruleSetBands.put(Integer.MIN_VALUE, DEFAULT_RULE_SET);
 
 
     }
 
+    // Returns the chunk at (atX, atY), generating it and the neighbours it depends on if needed.
+    // Safe to call from generation workers; chunks are deterministic, so if two threads race
+    // to build the same one it does not matter whose copy is published.
     public Chunk grabChunk(int atX, int atY) {
-        HashMap<Integer, Chunk> xChunks;
-        if (generatedChunksMap.get(atY) == null) {
-            generatedChunksMap.put(atY, xChunks = new HashMap<>());
-        } else xChunks = (HashMap<Integer, Chunk>) generatedChunksMap.get(atY);
+        Chunk foundChunk = getChunkIfExists(atX, atY);
+        if (foundChunk != null) {
+            GenerationMetrics.count(GenerationMetrics.Counter.CHUNK_HITS);
+            return foundChunk;
+        }
 
-        Chunk foundChunk;
-        if (xChunks.get(atX) == null) {
-            xChunks.put(atX, foundChunk = new Chunk(atX, atY, this));
-        } else foundChunk = xChunks.get(atX);
+        Chunk stored = loadStored(atX, atY);
+        if (stored != null) return stored;
+        return publishGenerated(new Chunk(atX, atY, this));
+    }
 
-        if (!allChunksList.contains(foundChunk))
-            allChunksList.add(foundChunk);
+    // Publishes the chunk saved in the region store at (atX, atY), if there is one
+    Chunk loadStored(int atX, int atY) {
+        RegionStore store = regionStore;
+        Chunk stored = store == null ? null : store.load(atX, atY, this);
+        if (stored == null) return null;
+        GenerationMetrics.count(GenerationMetrics.Counter.CHUNK_STORE_LOADS);
+        return publish(stored);
+    }
+
+    // Publishes a freshly generated chunk and saves it, unless another copy won the race
+    Chunk publishGenerated(Chunk generated) {
+        GenerationMetrics.count(GenerationMetrics.Counter.CHUNK_MISSES);
+        Chunk foundChunk = publish(generated);
+        RegionStore store = regionStore;
+        if (foundChunk == generated && store != null) store.save(generated);
+        return foundChunk;
+    }
+
+    // Chunks on odd checkerboard squares match their seams and openings to their four neighbours;
+    // chunks on even squares are generated from the world seed alone
+    public static boolean dependsOnNeighbours(int atX, int atY) {
+        return ((atX + atY) & 1) != 0;
+    }
+
+    public long getWorldSeed() {
+        return worldSeed;
+    }
+
+    // Random stream derived only from the world seed, the chunk position and the stream id
+    public SplittableRandom chunkRandom(int atX, int atY, long stream) {
+        return new SplittableRandom(mix64(mix64(mix64(worldSeed + stream) + atX) + atY));
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private synchronized Chunk publish(Chunk chunk) {
+        Chunk stored = generatedChunks.putIfAbsent(chunk);
+        if (stored != chunk) return stored;
+
+        chunk.lastAccess = accessClock;
+        loadedBytes.addAndGet(chunk.estimateBytes());
+
+        int regionX = chunk.xWorldLocation >> ChunkIndex.REGION_SHIFT;
+        int regionY = chunk.yWorldLocation >> ChunkIndex.REGION_SHIFT;
+        regionSummaries.computeIfAbsent(regionKey(regionX, regionY), k -> new RegionSummary(regionX, regionY))
+                .record(chunk.xWorldLocation, chunk.yWorldLocation, chunk.getLod());
 
         if (!firstChunkSpawned) {
             firstChunkSpawned = true;
-            spawnChunk = foundChunk;
-            System.out.println("Spawn Chunk Set: " + spawnChunk);
+            spawnChunk = chunk;
         }
 
-        return foundChunk;
+        return chunk;
     }
 
-    public Chunk getChunkIfExists(int atX, int atY) {
-        if (generatedChunksMap.containsKey(atY)) {
-            Map<Integer, Chunk> xChunks = generatedChunksMap.get(atY);
-            if (xChunks.containsKey(atX)) {
-                return xChunks.get(atX);
-            }
+    public void setRegionStore(RegionStore store) {
+        regionStore = store;
+    }
+
+    public void setChunkBudget(int maxChunks, long maxBytes) {
+        maxLoadedChunks = maxChunks;
+        maxLoadedBytes = maxBytes;
+    }
+
+    public void setRegionSummaryBudget(int maxRegions) {
+        maxRegionSummaries = Math.max(1, maxRegions);
+    }
+
+    public long getLoadedBytes() {
+        return loadedBytes.get();
+    }
+
+    // Marks the chunk as used now; called for every chunk the camera can see
+    public void touch(Chunk chunk) {
+        chunk.lastAccess = ++accessClock;
+    }
+
+    public boolean isOverBudget() {
+        return generatedChunks.size() > maxLoadedChunks || loadedBytes.get() > maxLoadedBytes;
+    }
+
+    // Evicts least recently used chunks more than keepRadius chunks from the focus until the world is
+    // back under the budget's target. Returns the number of chunks evicted.
+    public int evictIfOverBudget(int focusX, int focusY, int keepRadius) {
+        trimRegionSummaries(focusX, focusY);
+        if (!isOverBudget()) return 0;
+
+        ArrayList<Chunk> candidates = new ArrayList<>();
+        generatedChunks.forEach(c -> {
+            if (Math.max(Math.abs(c.xWorldLocation - focusX), Math.abs(c.yWorldLocation - focusY)) > keepRadius)
+                candidates.add(c);
+        });
+        candidates.sort(Comparator.comparingLong((Chunk c) -> c.lastAccess)
+                .thenComparingLong(c -> -distanceSquared(c, focusX, focusY)));
+
+        int targetChunks = (int) (Math.min(maxLoadedChunks, generatedChunks.size()) * EVICTION_TARGET);
+        long targetBytes = (long) (Math.min(maxLoadedBytes, loadedBytes.get()) * EVICTION_TARGET);
+        int evicted = 0;
+        for (Chunk c : candidates) {
+            if (generatedChunks.size() <= targetChunks && loadedBytes.get() <= targetBytes) break;
+            if (unload(c)) evicted++;
+        }
+        return evicted;
+    }
+
+    // Drops a chunk from memory; it is regenerated, or reloaded from the region store, when next needed
+    public boolean unload(Chunk chunk) {
+        if (!generatedChunks.remove(chunk)) return false;
+        loadedBytes.addAndGet(-chunk.estimateBytes());
+        return true;
+    }
+
+    private static long distanceSquared(Chunk c, int x, int y) {
+        long dx = c.xWorldLocation - x;
+        long dy = c.yWorldLocation - y;
+        return dx * dx + dy * dy;
+    }
+
+    // Aggregates of the region holding chunks (regionX << REGION_SHIFT, regionY << REGION_SHIFT) onwards,
+    // or null if none of its chunks was ever loaded
+    public RegionSummary getRegionSummary(int regionX, int regionY) {
+        return regionSummaries.get(regionKey(regionX, regionY));
+    }
+
+    // Drops the region summaries farthest from the focus chunk until at most EVICTION_TARGET of the
+    // summary budget is left, if the budget is exceeded. Returns the number dropped.
+    public int trimRegionSummaries(int focusX, int focusY) {
+        int max = maxRegionSummaries;
+        if (regionSummaries.size() <= max) return 0;
+
+        int regionX = focusX >> ChunkIndex.REGION_SHIFT;
+        int regionY = focusY >> ChunkIndex.REGION_SHIFT;
+        ArrayList<RegionSummary> summaries = new ArrayList<>(regionSummaries.values());
+        summaries.sort(Comparator.comparingLong((RegionSummary r) -> {
+            long dx = r.regionX - regionX;
+            long dy = r.regionY - regionY;
+            return -(dx * dx + dy * dy);
+        }));
+
+        int target = (int) (max * EVICTION_TARGET);
+        int dropped = 0;
+        for (RegionSummary r : summaries) {
+            if (regionSummaries.size() <= target) break;
+            if (regionSummaries.remove(regionKey(r.regionX, r.regionY), r)) dropped++;
         }
-        return null;
+        return dropped;
+    }
+
+    private static long regionKey(int regionX, int regionY) {
+        return ((long) regionX << 32) | (regionY & 0xFFFFFFFFL);
+    }
+
+    public void setRuleSetForDepth(int fromChunkY, String filename) {
+        ruleSetBands.put(fromChunkY, filename);
+    }
+
+    public RuleSet ruleSetFor(int atX, int atY) {
+        return RuleSetRegistry.get(ruleSetBands.get(ruleSetBands.floorKey(atY)));
+    }
+
+    public Chunk getChunkIfExists(int atX, int atY) {
+        return generatedChunks.get(atX, atY);
     }
 
     public boolean hasChunkBeenGeneratedAt(int atX, int atY) {
-        return generatedChunksMap.containsKey(atY) && generatedChunksMap.get(atY).containsKey(atX);
+        return generatedChunks.get(atX, atY) != null;
+    }
+
+    public int getLoadedChunkCount() {
+        return generatedChunks.size();
+    }
+
+    public void forEachLoadedChunk(Consumer<Chunk> action) {
+        generatedChunks.forEach(action);
     }
 
     public void listChunksThatExist() {
-        if (allChunksList.isEmpty()) {
+        if (generatedChunks.size() == 0) {
             System.out.println("No Chunks Currently Exist");
             return;
         }
-        for (Chunk c : allChunksList) {
-            System.out.print(c + ", ");
-        }
+        generatedChunks.forEach(c -> System.out.print(c + ", "));
         System.out.println();
     }
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Spatial index of loaded chunks. Chunks live in fixed 32x32 regions, each a flat array, and regions
+// are found through an open-addressing table keyed by the packed region coordinates. Reads are
+// lock-free; inserts are synchronized and publish a new table only when a region is added.
+final class ChunkIndex {
+    static final int REGION_SHIFT = 5;
+    static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final int REGION_MASK = REGION_SIZE - 1;
+
+    static final class Region {
+        final int regionX, regionY;
+        final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(REGION_SIZE * REGION_SIZE);
+        int count;
+        // Set once the region has been dropped from the table, so a stale lastRegion is not trusted
+        volatile boolean detached;
+
+        Region(int regionX, int regionY) {
+            this.regionX = regionX;
+            this.regionY = regionY;
+        }
+    }
+
+    private volatile Region[] table = new Region[16];
+    private int regionCount;
+    private volatile int chunkCount;
+
+    // Most neighbour lookups land in the region of the previous lookup
+    private volatile Region lastRegion;
+
+    public Chunk get(int x, int y) {
+        Region region = region(x >> REGION_SHIFT, y >> REGION_SHIFT);
+        return region == null ? null : region.chunks.get(slot(x, y));
+    }
+
+    // Adds the chunk unless one already exists at its position; returns the chunk that is now stored
+    public synchronized Chunk putIfAbsent(Chunk chunk) {
+        int x = chunk.xWorldLocation;
+        int y = chunk.yWorldLocation;
+        Region region = probe(table, x >> REGION_SHIFT, y >> REGION_SHIFT);
+        if (region == null) region = addRegion(x >> REGION_SHIFT, y >> REGION_SHIFT);
+
+        Chunk existing = region.chunks.get(slot(x, y));
+        if (existing != null) return existing;
+
+        region.chunks.set(slot(x, y), chunk);
+        region.count++;
+        chunkCount++;
+        return chunk;
+    }
+
+    // Removes the chunk if it is still the one stored at its position; empty regions are dropped
+    public synchronized boolean remove(Chunk chunk) {
+        int x = chunk.xWorldLocation;
+        int y = chunk.yWorldLocation;
+        Region region = probe(table, x >> REGION_SHIFT, y >> REGION_SHIFT);
+        if (region == null || !region.chunks.compareAndSet(slot(x, y), chunk, null)) return false;
+
+        chunkCount--;
+        if (--region.count == 0) removeRegion(region);
+        return true;
+    }
+
+    public int size() {
+        return chunkCount;
+    }
+
+    public void forEach(Consumer<Chunk> action) {
+        for (Region region : table) {
+            if (region == null) continue;
+            for (int i = 0; i < REGION_SIZE * REGION_SIZE; i++) {
+                Chunk chunk = region.chunks.get(i);
+                if (chunk != null) action.accept(chunk);
+            }
+        }
+    }
+
+    private Region region(int regionX, int regionY) {
+        Region cached = lastRegion;
+        if (cached != null && cached.regionX == regionX && cached.regionY == regionY && !cached.detached) return cached;
+
+        Region found = probe(table, regionX, regionY);
+        if (found != null) lastRegion = found;
+        return found;
+    }
+
+    private static Region probe(Region[] t, int regionX, int regionY) {
+        for (int i = hash(regionX, regionY) & (t.length - 1); t[i] != null; i = (i + 1) & (t.length - 1)) {
+            if (t[i].regionX == regionX && t[i].regionY == regionY) return t[i];
+        }
+        return null;
+    }
+
+    // Copy-on-write, so readers always probe a complete table
+    private Region addRegion(int regionX, int regionY) {
+        Region region = new Region(regionX, regionY);
+        Region[] t = table;
+        int capacity = (regionCount + 1) * 2 > t.length ? t.length * 2 : t.length;
+
+        Region[] next = new Region[capacity];
+        for (Region r : t) {
+            if (r != null) insert(next, r);
+        }
+        insert(next, region);
+
+        table = next;
+        regionCount++;
+        return region;
+    }
+
+    private void removeRegion(Region region) {
+        Region[] t = table;
+        Region[] next = new Region[t.length];
+        for (Region r : t) {
+            if (r != null && r != region) insert(next, r);
+        }
+
+        region.detached = true;
+        table = next;
+        regionCount--;
+    }
+
+    private static void insert(Region[] t, Region region) {
+        int i = hash(region.regionX, region.regionY) & (t.length - 1);
+        while (t[i] != null) i = (i + 1) & (t.length - 1);
+        t[i] = region;
+    }
+
+    static int slot(int x, int y) {
+        return ((y & REGION_MASK) << REGION_SHIFT) | (x & REGION_MASK);
+    }
+
+    private static int hash(int regionX, int regionY) {
+        long h = ((long) regionX << 32) ^ (regionY & 0xFFFFFFFFL);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
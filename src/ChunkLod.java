@@ -0,0 +1,132 @@
+// Coarse summaries of a chunk's tiles for zoomed-out views. Level k covers the chunk with cells of
+// 2^k x 2^k tiles, for k = 1 up to the level where one cell is the whole chunk. Each cell keeps the tile
+// covering most of it (0 if it is all air) and how much of it is solid, in 255ths. Built with the
+// chunk on the generation worker; the renderer only reads it.
+final class ChunkLod {
+    public static final int FULL = 255;
+
+    private static final ChunkLod[] UNIFORM_CACHE = new ChunkLod[256];
+
+    static final class Level {
+        // Cells per side, and the cells row major
+        final int size;
+        final byte[] dominant;
+        final byte[] solid;
+
+        Level(int size) {
+            this.size = size;
+            dominant = new byte[size * size];
+            solid = new byte[size * size];
+        }
+
+        public int dominantTile(int x, int y) {
+            return dominant[y * size + x] & 0xFF;
+        }
+
+        // 0 for air up to FULL for solid
+        public int solidFraction(int x, int y) {
+            return solid[y * size + x] & 0xFF;
+        }
+    }
+
+    private final int chunkSize;
+    private final Level[] levels;
+    private final boolean shared;
+
+    private ChunkLod(int chunkSize, Level[] levels, boolean shared) {
+        this.chunkSize = chunkSize;
+        this.levels = levels;
+        this.shared = shared;
+    }
+
+    public static ChunkLod build(TileLayer layer) {
+        int size = layer.getSize();
+        if (layer.isUniform()) {
+            int tile = layer.get(0, 0);
+            ChunkLod cached = UNIFORM_CACHE[tile];
+            if (cached != null && cached.chunkSize == size) return cached;
+            cached = summarize(layer, size, true);
+            UNIFORM_CACHE[tile] = cached;
+            return cached;
+        }
+        return summarize(layer, size, false);
+    }
+
+    private static ChunkLod summarize(TileLayer layer, int size, boolean shared) {
+        int count = 0;
+        while ((1 << count) < size) count++;
+
+        // Weights per tile id within the current cell; only touched ids are reset afterwards
+        int[] weights = new int[256];
+        int[] touched = new int[256];
+
+        Level[] levels = new Level[Math.max(1, count)];
+        for (int k = 1; k <= levels.length; k++) {
+            int cellTiles = Math.min(size, 1 << k);
+            Level level = new Level((size + cellTiles - 1) / cellTiles);
+            for (int cy = 0; cy < level.size; cy++) {
+                for (int cx = 0; cx < level.size; cx++) {
+                    int touchedCount = 0;
+                    int covered = 0, cells = 0;
+                    for (int y = cy * cellTiles; y < Math.min(size, (cy + 1) * cellTiles); y++) {
+                        for (int x = cx * cellTiles; x < Math.min(size, (cx + 1) * cellTiles); x++) {
+                            int tile = layer.get(x, y);
+                            int coverage = TileGeometry.areaEighths(tile);
+                            cells++;
+                            covered += coverage;
+                            if (coverage == 0) continue;
+                            if (weights[tile] == 0) touched[touchedCount++] = tile;
+                            weights[tile] += coverage;
+                        }
+                    }
+
+                    int best = 0, bestWeight = 0;
+                    for (int i = 0; i < touchedCount; i++) {
+                        int tile = touched[i];
+                        if (weights[tile] > bestWeight || (weights[tile] == bestWeight && tile < best)) {
+                            best = tile;
+                            bestWeight = weights[tile];
+                        }
+                        weights[tile] = 0;
+                    }
+
+                    int index = cy * level.size + cx;
+                    level.dominant[index] = (byte) best;
+                    level.solid[index] = (byte) solidFraction(covered, cells);
+                }
+            }
+            levels[k - 1] = level;
+        }
+        return new ChunkLod(size, levels, shared);
+    }
+
+    // covered eighths over cells tiles, rounded to 255ths
+    static int solidFraction(int covered, int cells) {
+        return (covered * FULL + cells * 4) / (cells * 8);
+    }
+
+    // Levels 1 .. getLevelCount(); the last has a single cell for the whole chunk
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public Level level(int k) {
+        return levels[k - 1];
+    }
+
+    public int dominantTile() {
+        return levels[levels.length - 1].dominantTile(0, 0);
+    }
+
+    public int solidFraction() {
+        return levels[levels.length - 1].solidFraction(0, 0);
+    }
+
+    // Uniform chunks share one summary, which is not charged to any of them
+    public long estimateBytes() {
+        if (shared) return 0;
+        long bytes = 16 + 16 + levels.length * 4L;
+        for (Level level : levels) bytes += 16 + 2 * (16 + level.dominant.length);
+        return bytes;
+    }
+}
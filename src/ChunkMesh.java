@@ -0,0 +1,33 @@
+// A chunk's tiles as triangles, built once on the CPU and uploaded by WorldRenderer. Vertices are
+// interleaved x, y, r, g, b floats in tile units relative to the chunk's top-left corner, so one mesh
+// serves every camera position and zoom level.
+final class ChunkMesh {
+    public static final int FLOATS_PER_VERTEX = 5;
+    public static final int STRIDE_BYTES = FLOATS_PER_VERTEX * Float.BYTES;
+
+    static final ChunkMesh EMPTY = new ChunkMesh(new float[0], 0);
+
+    private final float[] vertices;
+    private final int vertexCount;
+
+    ChunkMesh(float[] vertices, int vertexCount) {
+        this.vertices = vertices;
+        this.vertexCount = vertexCount;
+    }
+
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public boolean isEmpty() {
+        return vertexCount == 0;
+    }
+
+    public long estimateBytes() {
+        return 16 + 16 + vertices.length * 4L;
+    }
+}
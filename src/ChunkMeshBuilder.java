@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+// Turns tiles and LOD summaries into ChunkMeshes, with shapes and colours from TileGeometry. Runs of
+// rectangular tiles (full and half blocks) and of equal LOD cells are merged by GreedyMesher into one
+// quad each; other shapes are emitted per tile. Pure Java, so it runs on generation workers and
+// needs no GL context.
+final class ChunkMeshBuilder {
+    private static final ThreadLocal<ChunkMeshBuilder> ARENA = ThreadLocal.withInitial(ChunkMeshBuilder::new);
+
+    private final GreedyMesher greedy = new GreedyMesher();
+    private final GreedyMesher.RectSink tileSink = this::addTileRectangle;
+    private final GreedyMesher.RectSink cellSink = this::addCellRectangle;
+    private int[] keys = new int[0];
+    private int cellTiles;
+
+    private float[] data = new float[64 * 6 * ChunkMesh.FLOATS_PER_VERTEX];
+    private int length;
+    private float r, g, b;
+
+    // The builder owned by the calling thread, reusing its scratch arrays across chunks
+    public static ChunkMeshBuilder forCurrentThread() {
+        return ARENA.get();
+    }
+
+    public ChunkMesh build(TileLayer layer) {
+        if (layer.isUniform() && layer.get(0, 0) == 0) return ChunkMesh.EMPTY;
+
+        length = 0;
+        int size = layer.getSize();
+        int[] keys = keys(size * size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int tile = layer.get(x, y);
+                boolean mergeable = tile != 0 && TileGeometry.rectangle(tile) != null;
+                keys[y * size + x] = mergeable ? tile : -1;
+                if (!mergeable && tile != 0) addOutline(tile, x, y);
+            }
+        }
+        greedy.mesh(keys, size, size, TileGeometry::joinsHorizontally, TileGeometry::joinsVertically, tileSink);
+        return finish();
+    }
+
+    // One square per LOD cell, in the colour of its dominant tile darkened towards the black
+    // background by how much of the cell is air; equal neighbouring cells share a quad
+    public ChunkMesh buildLevel(ChunkLod.Level level, int cellTiles) {
+        length = 0;
+        int[] keys = keys(level.size * level.size);
+        for (int y = 0; y < level.size; y++) {
+            for (int x = 0; x < level.size; x++) {
+                int solid = level.solidFraction(x, y);
+                keys[y * level.size + x] = solid == 0 ? -1 : cellKey(level.dominantTile(x, y), solid);
+            }
+        }
+        this.cellTiles = cellTiles;
+        greedy.mesh(keys, level.size, level.size, key -> true, key -> true, cellSink);
+        return finish();
+    }
+
+    // One cell per known chunk of the region, merged across chunk seams
+    public ChunkMesh buildRegion(RegionSummary summary, int chunkSize) {
+        length = 0;
+        int[] keys = keys(RegionSummary.SIZE * RegionSummary.SIZE);
+        summary.fillKeys(keys);
+        this.cellTiles = chunkSize;
+        greedy.mesh(keys, RegionSummary.SIZE, RegionSummary.SIZE, key -> true, key -> true, cellSink);
+        return finish();
+    }
+
+    // Merge key of an LOD cell; cells only merge if both their tile and shade match
+    static int cellKey(int dominantTile, int solid) {
+        return dominantTile << 8 | solid;
+    }
+
+    private int[] keys(int cells) {
+        if (keys.length < cells) keys = new int[cells];
+        return keys;
+    }
+
+    private void addTileRectangle(int x, int y, int w, int h, int tile) {
+        float[] rect = TileGeometry.rectangle(tile);
+        color(TileGeometry.color(tile), 1);
+        quad(x + rect[0], y + rect[1], x + w - 1 + rect[2], y + h - 1 + rect[3]);
+    }
+
+    private void addCellRectangle(int x, int y, int w, int h, int key) {
+        color(TileGeometry.color(key >>> 8), (key & 0xFF) / (float) ChunkLod.FULL);
+        quad(x * cellTiles, y * cellTiles, (x + w) * cellTiles, (y + h) * cellTiles);
+    }
+
+    // Convex, so a fan from the first corner covers it
+    private void addOutline(int tile, float x, float y) {
+        float[] o = TileGeometry.outline(tile);
+        color(TileGeometry.color(tile), 1);
+        for (int i = 2; i + 3 < o.length; i += 2) {
+            triangle(x + o[0], y + o[1], x + o[i], y + o[i + 1], x + o[i + 2], y + o[i + 3]);
+        }
+    }
+
+    private ChunkMesh finish() {
+        if (length == 0) return ChunkMesh.EMPTY;
+        return new ChunkMesh(Arrays.copyOf(data, length), length / ChunkMesh.FLOATS_PER_VERTEX);
+    }
+
+    private void color(float[] c, float shade) {
+        r = c[0] * shade;
+        g = c[1] * shade;
+        b = c[2] * shade;
+    }
+
+    private void quad(float x0, float y0, float x1, float y1) {
+        triangle(x0, y0, x1, y0, x1, y1);
+        triangle(x0, y0, x1, y1, x0, y1);
+    }
+
+    private void triangle(float ax, float ay, float bx, float by, float cx, float cy) {
+        if (length + 3 * ChunkMesh.FLOATS_PER_VERTEX > data.length) data = Arrays.copyOf(data, data.length * 2);
+        vertex(ax, ay);
+        vertex(bx, by);
+        vertex(cx, cy);
+    }
+
+    private void vertex(float x, float y) {
+        data[length++] = x;
+        data[length++] = y;
+        data[length++] = r;
+        data[length++] = g;
+        data[length++] = b;
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+// Requests chunks before they come into view. The camera's velocity and zoom trend are smoothed over
+// the last frames and extrapolated lookahead seconds ahead; chunks of that predicted view that are not
+// already wanted for the current one are requested, nearest to the predicted centre first. The
+// renderer cancels queued requests outside the current and predicted views together, so predictions
+// left behind by a change of direction are dropped.
+//
+// Each prefetched chunk ends up as a hit (drawn later), wasted (generated but not drawn within
+// UNUSED_TIMEOUT_NANOS) or cancelled, counted in GenerationMetrics.
+class ChunkPrefetcher {
+    public static final double DEFAULT_LOOKAHEAD_SECONDS = 0.75;
+
+    private static final double SMOOTHING_SECONDS = 0.15;
+    private static final int MAX_REQUESTS_PER_FRAME = 32;
+    private static final long UNUSED_TIMEOUT_NANOS = 10_000_000_000L;
+    private static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final ChunkGenerator generator;
+    private final ChunkGenerationService generationService;
+    private final Viewport predicted;
+    private final int[] predictedRange = new int[4];
+
+    private double lookaheadSeconds = Double.parseDouble(
+            System.getProperty("prefetch.lookahead", Double.toString(DEFAULT_LOOKAHEAD_SECONDS)));
+
+    // Smoothed camera motion in tiles per second, and zoom change in log(zoom) per second
+    private double velocityX, velocityY, zoomRate;
+    private double lastX, lastY, lastLogZoom;
+    private long lastNanos;
+
+    // Prefetched chunks not yet drawn, with the time they were requested
+    private final Outstanding outstanding = new Outstanding();
+    private long[] settled = new long[64];
+    private long lastSweep;
+
+    public ChunkPrefetcher(ChunkGenerator generator, ChunkGenerationService generationService, int tilePixels) {
+        this.generator = generator;
+        this.generationService = generationService;
+        this.predicted = new Viewport(tilePixels, 1, 1);
+    }
+
+    public void setLookaheadSeconds(double seconds) {
+        lookaheadSeconds = Math.max(0, seconds);
+    }
+
+    public double getSpeed() {
+        return Math.hypot(velocityX, velocityY);
+    }
+
+    public int getOutstandingCount() {
+        return outstanding.size;
+    }
+
+    // Updates the motion estimate and requests up to MAX_REQUESTS_PER_FRAME chunks of the predicted view
+    // that lie outside currentRange, keeping the queue under maxPending. Returns the predicted range.
+    public int[] update(Viewport view, int[] currentRange, int chunkBudget, int maxPending, long nowNanos) {
+        track(view, nowNanos);
+
+        double ahead = lookaheadSeconds;
+        predicted.copyFrom(view);
+        predicted.centerOn(view.getCenterX() + velocityX * ahead, view.getCenterY() + velocityY * ahead);
+        predicted.setZoom(view.getZoom() * Math.exp(zoomRate * ahead));
+
+        int chunkSize = ChunkGenerator.CHUNK_SIZE;
+        int[] range = predicted.visibleChunks(chunkSize, 1, chunkBudget, predictedRange);
+        request(range, currentRange, predicted.focusChunkX(chunkSize), predicted.focusChunkY(chunkSize), maxPending, nowNanos);
+
+        if (nowNanos - lastSweep >= SWEEP_INTERVAL_NANOS) {
+            lastSweep = nowNanos;
+            sweep(nowNanos);
+        }
+        return range;
+    }
+
+    // Counts prefetched chunks of the drawn range as hits
+    public void recordDrawn(int[] range) {
+        if (outstanding.size == 0) return;
+        for (int y = range[1]; y <= range[3]; y++) {
+            for (int x = range[0]; x <= range[2]; x++) {
+                long key = key(x, y);
+                if (!outstanding.contains(key) || generator.getChunkIfExists(x, y) == null) continue;
+                outstanding.remove(key);
+                GenerationMetrics.count(GenerationMetrics.Counter.PREFETCH_HITS);
+            }
+        }
+    }
+
+    private void track(Viewport view, long nowNanos) {
+        double logZoom = Math.log(view.getZoom());
+        if (lastNanos != 0) {
+            double dt = (nowNanos - lastNanos) / 1e9;
+            if (dt > 0) {
+                double blend = 1 - Math.exp(-dt / SMOOTHING_SECONDS);
+                velocityX += ((view.getCenterX() - lastX) / dt - velocityX) * blend;
+                velocityY += ((view.getCenterY() - lastY) / dt - velocityY) * blend;
+                zoomRate += ((logZoom - lastLogZoom) / dt - zoomRate) * blend;
+            }
+        }
+        lastX = view.getCenterX();
+        lastY = view.getCenterY();
+        lastLogZoom = logZoom;
+        lastNanos = nowNanos;
+    }
+
+    private void request(int[] range, int[] currentRange, int focusX, int focusY, int maxPending, long nowNanos) {
+        int budget = Math.min(MAX_REQUESTS_PER_FRAME, maxPending - generationService.getPendingCount());
+        int rings = Math.max(Math.max(focusX - range[0], range[2] - focusX), Math.max(focusY - range[1], range[3] - focusY));
+
+        for (int r = 0; r <= rings && budget > 0; r++) {
+            for (int y = focusY - r; y <= focusY + r && budget > 0; y++) {
+                if (y < range[1] || y > range[3]) continue;
+                boolean edgeRow = y == focusY - r || y == focusY + r;
+                for (int x = focusX - r; x <= focusX + r && budget > 0; x += edgeRow ? 1 : 2 * r) {
+                    if (x < range[0] || x > range[2] || inside(currentRange, x, y)) continue;
+                    if (generator.getChunkIfExists(x, y) != null || generationService.isPending(x, y)
+                            || generationService.isFailed(x, y)) continue;
+                    generationService.request(x, y);
+                    outstanding.put(key(x, y), nowNanos);
+                    GenerationMetrics.count(GenerationMetrics.Counter.PREFETCH_REQUESTS);
+                    budget--;
+                }
+            }
+        }
+    }
+
+    // Settles prefetches that were cancelled, or generated but not drawn in time
+    private void sweep(long nowNanos) {
+        int count = 0;
+        for (int i = 0; i < outstanding.keys.length; i++) {
+            if (!outstanding.used[i]) continue;
+            long key = outstanding.keys[i];
+            int x = (int) (key >> 32);
+            int y = (int) key;
+            boolean exists = generator.getChunkIfExists(x, y) != null;
+            if (!exists && !generationService.isPending(x, y)) {
+                GenerationMetrics.count(GenerationMetrics.Counter.PREFETCH_CANCELLED);
+            } else if (nowNanos - outstanding.times[i] >= UNUSED_TIMEOUT_NANOS) {
+                GenerationMetrics.count(exists ? GenerationMetrics.Counter.PREFETCH_WASTED
+                        : GenerationMetrics.Counter.PREFETCH_CANCELLED);
+            } else {
+                continue;
+            }
+            if (count == settled.length) settled = Arrays.copyOf(settled, count * 2);
+            settled[count++] = key;
+        }
+        // Removing shifts entries, so it waits until the scan is done
+        for (int i = 0; i < count; i++) outstanding.remove(settled[i]);
+    }
+
+    private static boolean inside(int[] range, int x, int y) {
+        return x >= range[0] && x <= range[2] && y >= range[1] && y <= range[3];
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    // Packed chunk key -> request time, open addressing with linear probing, so the per-frame lookups
+    // allocate nothing
+    static final class Outstanding {
+        long[] keys = new long[64];
+        long[] times = new long[64];
+        boolean[] used = new boolean[64];
+        int size;
+
+        boolean contains(long key) {
+            return used[find(key)];
+        }
+
+        void put(long key, long time) {
+            if ((size + 1) * 2 > keys.length) grow();
+            int i = find(key);
+            if (!used[i]) {
+                used[i] = true;
+                keys[i] = key;
+                size++;
+            }
+            times[i] = time;
+        }
+
+        void remove(long key) {
+            int i = find(key);
+            if (!used[i]) return;
+            used[i] = false;
+            size--;
+
+            // Moves later entries of the probe run back so every key stays reachable from its home slot
+            int mask = keys.length - 1;
+            for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) < ((j - i) & mask)) continue;
+                keys[i] = keys[j];
+                times[i] = times[j];
+                used[i] = true;
+                used[j] = false;
+                i = j;
+            }
+        }
+
+        // The slot holding key, or the empty slot where it would go
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (used[i] && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldTimes = times;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            times = new long[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) put(oldKeys[i], oldTimes[i]);
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
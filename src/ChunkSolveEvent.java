@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event around one chunk's WFC solve. Costs a branch unless a recording enables it, e.g.
+//   java -XX:StartFlightRecording=filename=gen.jfr ...  and  jfr print --events wfc.ChunkSolve gen.jfr
+@Name("wfc.ChunkSolve")
+@Label("Chunk Solve")
+@Category("Wave Function Collapse")
+@Description("WFC solve of one chunk's tiles")
+class ChunkSolveEvent extends Event {
+    @Label("Chunk X")
+    int chunkX;
+    @Label("Chunk Y")
+    int chunkY;
+    @Label("Size")
+    int size;
+    @Label("Collapses")
+    int collapses;
+    @Label("Propagations")
+    int propagations;
+    @Label("Domain Reductions")
+    int domainReductions;
+    @Label("Contradictions")
+    int contradictions;
+    @Label("Backtracks")
+    int backtracks;
+    @Label("Fallback Cells")
+    int fallbackCells;
+
+    void commit(int x, int y, int size, SolveStats stats) {
+        if (!shouldCommit()) return;
+        chunkX = x;
+        chunkY = y;
+        this.size = size;
+        collapses = stats.collapses;
+        propagations = stats.propagations;
+        domainReductions = stats.domainReductions;
+        contradictions = stats.contradictions;
+        backtracks = stats.backtracks;
+        fallbackCells = stats.fallbackCells;
+        commit();
+    }
+}
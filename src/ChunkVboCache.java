@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+
+// Vertex buffers for drawn chunks, one per LOD level in use, plus one per drawn region summary. Chunk
+// buffers are uploaded the first time a chunk is drawn at a level; buffers of chunks and regions that
+// were not drawn for a while (scrolled away or evicted) are deleted. Chunks still being solved get a
+// buffer of their decided cells, re-uploaded whenever more cells are decided.
+class ChunkVboCache {
+    private static final int UNUSED_FRAMES = 120;
+    private static final int SWEEP_INTERVAL = 60;
+    // A region that keeps filling in is re-uploaded at most this often
+    private static final int REGION_REBUILD_FRAMES = 15;
+
+    private static final class Entry {
+        // Per level; a count of -1 means not uploaded yet
+        final int[] buffers;
+        final int[] counts;
+        long lastFrame;
+        long builtFrame;
+        int version;
+
+        Entry(int levels) {
+            buffers = new int[levels];
+            counts = new int[levels];
+            Arrays.fill(counts, -1);
+        }
+    }
+
+    // Keyed by identity: a regenerated chunk is a new object and gets new buffers
+    private final Map<Chunk, Entry> entries = new HashMap<>();
+    private final Map<RegionSummary, Entry> regionEntries = new HashMap<>();
+    private final Map<Chunk, Entry> partialEntries = new HashMap<>();
+    private final ChunkMeshBuilder builder = new ChunkMeshBuilder();
+    private long frame;
+    private int drawCalls;
+
+    public void beginFrame() {
+        frame++;
+        drawCalls = 0;
+        glEnableClientState(GL_VERTEX_ARRAY);
+        glEnableClientState(GL_COLOR_ARRAY);
+    }
+
+    // Draws the chunk at LOD level (0 for every tile) with its top-left corner at (x, y) pixels, one
+    // tile being tilePixels wide
+    public void draw(Chunk chunk, int level, float x, float y, float tilePixels) {
+        ChunkLod lod = chunk.getLod();
+        Entry entry = entries.get(chunk);
+        if (entry == null) {
+            entry = new Entry(lod.getLevelCount() + 1);
+            entries.put(chunk, entry);
+        }
+        entry.lastFrame = frame;
+
+        if (entry.counts[level] < 0) {
+            int cellTiles = Math.min(ChunkGenerator.CHUNK_SIZE, 1 << level);
+            upload(entry, level, level == 0 ? chunk.takeMesh() : builder.buildLevel(lod.level(level), cellTiles));
+        }
+        drawBuffer(entry, level, x, y, tilePixels);
+    }
+
+    // Draws a region's aggregates with its top-left corner at (x, y) pixels
+    public void drawRegion(RegionSummary summary, float x, float y, float tilePixels) {
+        Entry entry = regionEntries.get(summary);
+        if (entry == null) {
+            entry = new Entry(1);
+            regionEntries.put(summary, entry);
+        }
+        entry.lastFrame = frame;
+
+        int version = summary.getVersion();
+        if (entry.counts[0] < 0 || (entry.version != version && frame - entry.builtFrame >= REGION_REBUILD_FRAMES)) {
+            entry.version = version;
+            entry.builtFrame = frame;
+            upload(entry, 0, builder.buildRegion(summary, ChunkGenerator.CHUNK_SIZE));
+        }
+        drawBuffer(entry, 0, x, y, tilePixels);
+    }
+
+    // Draws the decided cells of a chunk that is still being solved; nothing before its first slice
+    public void drawPartial(Chunk chunk, float x, float y, float tilePixels) {
+        TileLayer layer = chunk.getPartialLayer();
+        if (layer == null) return;
+        Entry entry = partialEntries.get(chunk);
+        if (entry == null) {
+            entry = new Entry(1);
+            partialEntries.put(chunk, entry);
+        }
+        entry.lastFrame = frame;
+
+        int version = chunk.getPartialVersion();
+        if (entry.counts[0] < 0 || entry.version != version) {
+            entry.version = version;
+            upload(entry, 0, builder.build(layer));
+        }
+        drawBuffer(entry, 0, x, y, tilePixels);
+    }
+
+    private void drawBuffer(Entry entry, int level, float x, float y, float tilePixels) {
+        if (entry.counts[level] == 0) return;
+
+        glBindBuffer(GL_ARRAY_BUFFER, entry.buffers[level]);
+        glVertexPointer(2, GL_FLOAT, ChunkMesh.STRIDE_BYTES, 0L);
+        glColorPointer(3, GL_FLOAT, ChunkMesh.STRIDE_BYTES, 2L * Float.BYTES);
+
+        glPushMatrix();
+        glTranslatef(x, y, 0);
+        glScalef(tilePixels, tilePixels, 1);
+        glDrawArrays(GL_TRIANGLES, 0, entry.counts[level]);
+        glPopMatrix();
+        drawCalls++;
+    }
+
+    public void endFrame() {
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glDisableClientState(GL_COLOR_ARRAY);
+        glDisableClientState(GL_VERTEX_ARRAY);
+
+        if (frame % SWEEP_INTERVAL != 0) return;
+        sweep(entries.values().iterator());
+        sweep(regionEntries.values().iterator());
+        sweep(partialEntries.values().iterator());
+    }
+
+    private void sweep(Iterator<Entry> it) {
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (frame - entry.lastFrame < UNUSED_FRAMES) continue;
+            delete(entry);
+            it.remove();
+        }
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public int getBufferCount() {
+        return entries.size() + regionEntries.size() + partialEntries.size();
+    }
+
+    public void dispose() {
+        for (Entry entry : entries.values()) delete(entry);
+        for (Entry entry : regionEntries.values()) delete(entry);
+        for (Entry entry : partialEntries.values()) delete(entry);
+        entries.clear();
+        regionEntries.clear();
+        partialEntries.clear();
+    }
+
+    private static void upload(Entry entry, int level, ChunkMesh mesh) {
+        entry.counts[level] = mesh.getVertexCount();
+        if (mesh.isEmpty()) return;
+
+        if (entry.buffers[level] == 0) entry.buffers[level] = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, entry.buffers[level]);
+        glBufferData(GL_ARRAY_BUFFER, mesh.getVertices(), GL_STATIC_DRAW);
+    }
+
+    private static void delete(Entry entry) {
+        for (int buffer : entry.buffers) {
+            if (buffer != 0) glDeleteBuffers(buffer);
+        }
+    }
+}
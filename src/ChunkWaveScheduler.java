@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Pre-generates a rectangle of chunks on all cores in two checkerboard waves. The first wave holds the
+// even squares, which never read a neighbour; the second holds the odd squares, which only read finished
+// chunks of the first wave. Chunks generated at the same time therefore never share an edge, and the
+// result is identical to a single-threaded run with the same world seed.
+public class ChunkWaveScheduler {
+
+    private final ChunkGenerator generator;
+    private final int threads;
+    private volatile ChunkListener listener;
+
+    // Told about every chunk a wave generated or found, on the worker thread that handled it
+    public interface ChunkListener {
+        void generated(Chunk chunk, long nanos);
+    }
+
+    public ChunkWaveScheduler(ChunkGenerator generator, int threads) {
+        this.generator = generator;
+        this.threads = threads;
+    }
+
+    public void setListener(ChunkListener listener) {
+        this.listener = listener;
+    }
+
+    // Generates every chunk in [minX..maxX] x [minY..maxY]
+    public void generate(int minX, int minY, int maxX, int maxY) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chunk-wave-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            // Odd squares on the rectangle's border also depend on even squares just outside it
+            runWave(pool, minX - 1, minY - 1, maxX + 1, maxY + 1, false, minX, minY, maxX, maxY);
+            runWave(pool, minX, minY, maxX, maxY, true, minX, minY, maxX, maxY);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void runWave(ExecutorService pool, int fromX, int fromY, int toX, int toY, boolean odd,
+                         int minX, int minY, int maxX, int maxY) throws InterruptedException {
+        List<Callable<Void>> rows = new ArrayList<>();
+        for (int y = fromY; y <= toY; y++) {
+            final int row = y;
+            rows.add(() -> {
+                for (int x = fromX; x <= toX; x++) {
+                    if (ChunkGenerator.dependsOnNeighbours(x, row) != odd) continue;
+                    if (!odd && !touches(x, row, minX, minY, maxX, maxY)) continue;
+                    long start = System.nanoTime();
+                    Chunk chunk = generator.grabChunk(x, row);
+                    ChunkListener l = listener;
+                    if (l != null) l.generated(chunk, System.nanoTime() - start);
+                }
+                return null;
+            });
+        }
+
+        for (Future<Void> f : pool.invokeAll(rows)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Chunk generation failed", e.getCause());
+            }
+        }
+    }
+
+    // True if the chunk is inside the rectangle or shares an edge with it
+    private static boolean touches(int x, int y, int minX, int minY, int maxX, int maxY) {
+        boolean insideX = x >= minX && x <= maxX;
+        boolean insideY = y >= minY && y <= maxY;
+        if (insideX && insideY) return true;
+        return (insideX && (y == minY - 1 || y == maxY + 1)) || (insideY && (x == minX - 1 || x == maxX + 1));
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+// Binary form of a compiled rule set, kept next to its text source as <name>.wfcb and rebuilt by
+// RuleSetRegistry whenever the source hash in it no longer matches the text file.
+//
+// Layout (big-endian): magic, version, source hash, example count, tile count, words per mask,
+// the EAST/WEST/SOUTH/NORTH mask tables (tileCount * words longs each), the tile weights, the number
+// of output tiles (0 for the tiled model), then for the overlapping model the output tile of every
+// pattern, the edge tile count and the four edge mask tables, and finally a CRC32 of everything before it.
+final class CompiledRuleFile {
+    static final int MAGIC = 0x57464342; // "WFCB"
+    static final int VERSION = 2;
+    static final String EXTENSION = ".wfcb";
+
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+
+    private CompiledRuleFile() {
+    }
+
+    // Compiles the given text rule files ahead of time
+    public static void main(String[] args) {
+        for (String filename : args) {
+            RuleSet ruleSet = RuleSetRegistry.get(filename);
+            System.out.println(ruleSet + " -> " + pathFor(Paths.get(filename)));
+        }
+    }
+
+    static Path pathFor(Path source) {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return source.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    // The rule set stored in file if it was compiled from source content with this hash, otherwise null.
+    // Throws if the file exists but is damaged.
+    static RuleSet read(Path file, String sourceName, long sourceHash) throws IOException {
+        if (!Files.exists(file)) return null;
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < HEADER_BYTES + 4) throw new IOException(file + " is truncated");
+        if (in.getInt() != MAGIC) throw new IOException(file + " is not a compiled rule file");
+        if (in.getInt() != VERSION) return null;
+        if (in.getLong() != sourceHash) return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), 0, in.limit() - 4);
+        if (in.getInt(in.limit() - 4) != (int) crc.getValue()) throw new IOException(file + " failed its checksum");
+
+        int exampleCount = in.getInt();
+        int tileCount = in.getInt();
+        int words = in.getInt();
+        if (tileCount <= 0 || words != (tileCount + 63) >>> 6) {
+            throw new IOException(file + " has an invalid tile count " + tileCount + " / " + words + " words");
+        }
+        long expected = HEADER_BYTES + 4L * tileCount * words * 8 + tileCount * 8L + 4 + 4;
+        if (in.limit() < expected) throw new IOException(file + " is " + in.limit() + " bytes, expected " + expected);
+
+        long[][] compatible = readTables(in, tileCount * words);
+        double[] weights = new double[tileCount];
+        in.asDoubleBuffer().get(weights);
+        in.position(in.position() + tileCount * 8);
+
+        CompiledWfcRules rules;
+        int outputCount = in.getInt();
+        if (outputCount == 0) {
+            rules = new CompiledWfcRules(tileCount, compatible, weights);
+        } else {
+            if (outputCount != tileCount || in.remaining() < tileCount * 4L + 4 + 4) {
+                throw new IOException(file + " has a damaged pattern table");
+            }
+            int[] outputTiles = new int[tileCount];
+            in.asIntBuffer().get(outputTiles);
+            in.position(in.position() + tileCount * 4);
+            int edgeTileCount = in.getInt();
+            expected = in.position() + 4L * edgeTileCount * words * 8 + 4;
+            if (edgeTileCount <= 0 || in.limit() != expected) {
+                throw new IOException(file + " is " + in.limit() + " bytes, expected " + expected);
+            }
+            long[][] edgeCompatible = readTables(in, edgeTileCount * words);
+            rules = new CompiledWfcRules(tileCount, compatible, weights, outputTiles, edgeTileCount, edgeCompatible);
+        }
+        if (in.remaining() != 4) throw new IOException(file + " has " + (in.remaining() - 4) + " trailing bytes");
+
+        return new RuleSet(sourceName, sourceHash, exampleCount, rules);
+    }
+
+    private static long[][] readTables(ByteBuffer in, int length) {
+        long[][] tables = new long[4][length];
+        for (long[] table : tables) {
+            in.asLongBuffer().get(table);
+            in.position(in.position() + length * 8);
+        }
+        return tables;
+    }
+
+    // Writes to a temporary file first so a reader never sees a half written artifact
+    static void write(Path file, RuleSet ruleSet) throws IOException {
+        CompiledWfcRules rules = ruleSet.getRules();
+        int tileCount = rules.getTileCount();
+        int words = rules.getWords();
+
+        int[] outputTiles = rules.outputTiles();
+        int edgeBytes = outputTiles == null ? 0 : tileCount * 4 + 4 + 4 * rules.getEdgeTileCount() * words * 8;
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + 4 * tileCount * words * 8 + tileCount * 8 + 4 + edgeBytes + 4);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(ruleSet.getContentHash());
+        out.putInt(ruleSet.getExampleCount());
+        out.putInt(tileCount);
+        out.putInt(words);
+        for (int dir = 0; dir < 4; dir++) {
+            for (long mask : rules.table(dir)) out.putLong(mask);
+        }
+        for (int tile = 0; tile < tileCount; tile++) out.putDouble(rules.getWeight(tile));
+        if (outputTiles == null) {
+            out.putInt(0);
+        } else {
+            out.putInt(tileCount);
+            for (int tile : outputTiles) out.putInt(tile);
+            out.putInt(rules.getEdgeTileCount());
+            for (int dir = 0; dir < 4; dir++) {
+                for (long mask : rules.edgeTable(dir)) out.putLong(mask);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putInt((int) crc.getValue());
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
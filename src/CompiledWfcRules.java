@@ -0,0 +1,124 @@
+// Frozen per-direction adjacency tables built by WfcRules.compile(); safe to share between solvers
+final class CompiledWfcRules {
+    // Neighbour directions, matching the order the solver walks them
+    public static final int EAST = 0;
+    public static final int WEST = 1;
+    public static final int SOUTH = 2;
+    public static final int NORTH = 3;
+
+    private final int tileCount;
+    private final int words;
+    // compatible[dir][tile * words + w]: tiles allowed next to `tile` in direction dir
+    private final long[][] compatible;
+    private final double[] weights;
+
+    // Overlapping model only (null for tiled rules, where both are the identity): the tile each
+    // pattern draws, and edgeCompatible[dir][tile * words + w], the patterns allowed in direction
+    // dir from a plain tile of a neighbouring chunk
+    private final int[] outputTiles;
+    private final int edgeTileCount;
+    private final long[][] edgeCompatible;
+
+    CompiledWfcRules(int tileCount, long[][] compatible, double[] weights) {
+        this(tileCount, compatible, weights, null, tileCount, compatible);
+    }
+
+    CompiledWfcRules(int tileCount, long[][] compatible, double[] weights,
+                     int[] outputTiles, int edgeTileCount, long[][] edgeCompatible) {
+        this.tileCount = tileCount;
+        this.words = (tileCount + 63) >>> 6;
+        this.compatible = compatible;
+        this.weights = weights;
+        this.outputTiles = outputTiles;
+        this.edgeTileCount = edgeTileCount;
+        this.edgeCompatible = edgeCompatible;
+    }
+
+    public static int direction(int dx, int dy) {
+        if (dx == 1) return EAST;
+        if (dx == -1) return WEST;
+        if (dy == 1) return SOUTH;
+        return NORTH;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getWords() {
+        return words;
+    }
+
+    public double getWeight(int tile) {
+        return weights[tile];
+    }
+
+    // Backing tables, for serialising; must not be modified
+    long[] table(int dir) {
+        return compatible[dir];
+    }
+
+    long[] edgeTable(int dir) {
+        return edgeCompatible[dir];
+    }
+
+    int[] outputTiles() {
+        return outputTiles;
+    }
+
+    public boolean isOverlapping() {
+        return outputTiles != null;
+    }
+
+    public int getEdgeTileCount() {
+        return edgeTileCount;
+    }
+
+    // The tile drawn for a solved cell; patterns map to their top-left tile
+    public int outputTile(int tile) {
+        return outputTiles == null ? tile : outputTiles[tile];
+    }
+
+    public boolean isAllowed(int tile, int neighbor, int dir) {
+        return (compatible[dir][tile * words + (neighbor >>> 6)] & (1L << neighbor)) != 0;
+    }
+
+    // Writes the tiles allowed next to `tile` in direction dir into out
+    public void allowedInto(int tile, int dir, long[] out) {
+        System.arraycopy(compatible[dir], tile * words, out, 0, words);
+    }
+
+    // Like allowedInto, but from a plain tile of a neighbouring chunk; tiles the rules never saw allow anything
+    public void allowedNextToTile(int tile, int dir, long[] out) {
+        if (tile < 0 || tile >= edgeTileCount) {
+            for (int w = 0; w < words; w++) {
+                int bits = Math.min(64, tileCount - (w << 6));
+                out[w] = bits == 64 ? -1L : (1L << bits) - 1;
+            }
+            return;
+        }
+        System.arraycopy(edgeCompatible[dir], tile * words, out, 0, words);
+    }
+
+    // ORs into out every tile allowed in direction dir next to any tile of the domain at domain[offset].
+    // Learned rules are symmetric (east[a] holds b iff west[b] holds a), so this is exactly the
+    // set of neighbour tiles that still have support from the domain.
+    public void supportInto(long[] domain, int offset, int dir, long[] out) {
+        long[] table = compatible[dir];
+        if (words == 1) {
+            long support = 0L;
+            for (long bits = domain[offset]; bits != 0; bits &= bits - 1)
+                support |= table[Long.numberOfTrailingZeros(bits)];
+            out[0] = support;
+            return;
+        }
+
+        for (int w = 0; w < words; w++) out[w] = 0L;
+        for (int dw = 0; dw < words; dw++) {
+            for (long bits = domain[offset + dw]; bits != 0; bits &= bits - 1) {
+                int base = ((dw << 6) + Long.numberOfTrailingZeros(bits)) * words;
+                for (int w = 0; w < words; w++) out[w] |= table[base + w];
+            }
+        }
+    }
+}
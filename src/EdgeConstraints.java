@@ -0,0 +1,40 @@
+// Container for edge constraints
+class EdgeConstraints {
+    public int[] topEdge = null;
+    public int[] bottomEdge = null;
+    public int[] leftEdge = null;
+    public int[] rightEdge = null;
+
+    // Backing arrays kept between uses; an edge is only present while its field is set
+    private int[] topBuffer = new int[0];
+    private int[] bottomBuffer = new int[0];
+    private int[] leftBuffer = new int[0];
+    private int[] rightBuffer = new int[0];
+
+    public void clear() {
+        topEdge = null;
+        bottomEdge = null;
+        leftEdge = null;
+        rightEdge = null;
+    }
+
+    public int[] setTopEdge(int size) {
+        if (topBuffer.length < size) topBuffer = new int[size];
+        return topEdge = topBuffer;
+    }
+
+    public int[] setBottomEdge(int size) {
+        if (bottomBuffer.length < size) bottomBuffer = new int[size];
+        return bottomEdge = bottomBuffer;
+    }
+
+    public int[] setLeftEdge(int size) {
+        if (leftBuffer.length < size) leftBuffer = new int[size];
+        return leftEdge = leftBuffer;
+    }
+
+    public int[] setRightEdge(int size) {
+        if (rightBuffer.length < size) rightBuffer = new int[size];
+        return rightEdge = rightBuffer;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+// Indexed binary min-heap of wave cells keyed by entropy
+class EntropyHeap {
+    private final int[] heap;
+    private final int[] position;
+    private final double[] key;
+    private int size;
+
+    public EntropyHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        key = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) position[heap[i]] = -1;
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int cell) {
+        return position[cell] >= 0;
+    }
+
+    // Inserts the cell or moves it to its new key
+    public void update(int cell, double entropy) {
+        int slot = position[cell];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = cell;
+            position[cell] = slot;
+            key[cell] = entropy;
+            siftUp(slot);
+            return;
+        }
+
+        double old = key[cell];
+        key[cell] = entropy;
+        if (entropy < old) siftUp(slot);
+        else siftDown(slot);
+    }
+
+    public void remove(int cell) {
+        int slot = position[cell];
+        if (slot < 0) return;
+
+        position[cell] = -1;
+        int last = heap[--size];
+        if (slot == size) return;
+
+        heap[slot] = last;
+        position[last] = slot;
+        siftUp(slot);
+        siftDown(position[last]);
+    }
+
+    // Returns the cell with the lowest entropy, or -1 if empty
+    public int pollMin() {
+        if (size == 0) return -1;
+        int cell = heap[0];
+        remove(cell);
+        return cell;
+    }
+
+    private void siftUp(int slot) {
+        int cell = heap[slot];
+        double k = key[cell];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int parentCell = heap[parent];
+            if (key[parentCell] <= k) break;
+            heap[slot] = parentCell;
+            position[parentCell] = slot;
+            slot = parent;
+        }
+        heap[slot] = cell;
+        position[cell] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int cell = heap[slot];
+        double k = key[cell];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) break;
+            if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) child++;
+            int childCell = heap[child];
+            if (key[childCell] >= k) break;
+            heap[slot] = childCell;
+            position[childCell] = slot;
+            slot = child;
+        }
+        heap[slot] = cell;
+        position[cell] = slot;
+    }
+}
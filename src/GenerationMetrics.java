@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide generation counters, readable in-process (the F3 overlay) and dumpable as JSON or CSV
+// (WorldGenCli --metrics). Off unless -Dwfc.metrics=true or setEnabled(true); while off every record
+// call is a single volatile read. The JFR events ChunkSolveEvent and RuleLoadEvent do not depend on
+// this switch, they are controlled by the flight recording.
+final class GenerationMetrics {
+
+    enum Counter {
+        CHUNK_HITS("chunkHits"),
+        CHUNK_MISSES("chunkMisses"),
+        CHUNK_STORE_LOADS("chunkStoreLoads"),
+        CHUNKS_SOLVED("chunksSolved"),
+        SOLVE_NANOS("solveNanos"),
+        COLLAPSES("collapses"),
+        PROPAGATIONS("propagations"),
+        DOMAIN_REDUCTIONS("domainReductions"),
+        CONTRADICTIONS("contradictions"),
+        BACKTRACKS("backtracks"),
+        BLOCK_RETRIES("blockRetries"),
+        FALLBACK_CELLS("fallbackCells"),
+        RULE_LOADS("ruleLoads"),
+        RULE_LOAD_NANOS("ruleLoadNanos"),
+        PLACEHOLDERS_DRAWN("placeholdersDrawn"),
+        PREFETCH_REQUESTS("prefetchRequests"),
+        PREFETCH_HITS("prefetchHits"),
+        PREFETCH_WASTED("prefetchWasted"),
+        PREFETCH_CANCELLED("prefetchCancelled");
+
+        final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("wfc.metrics");
+
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static final Histogram solveTimes = new Histogram();
+
+    static {
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+    }
+
+    private GenerationMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static void reset() {
+        for (LongAdder counter : counters) counter.reset();
+        solveTimes.reset();
+    }
+
+    public static long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public static void count(Counter counter) {
+        if (enabled) counters[counter.ordinal()].increment();
+    }
+
+    public static void count(Counter counter, long amount) {
+        if (enabled) counters[counter.ordinal()].add(amount);
+    }
+
+    public static void recordSolve(long nanos, SolveStats stats) {
+        if (!enabled) return;
+        add(Counter.CHUNKS_SOLVED, 1);
+        add(Counter.SOLVE_NANOS, nanos);
+        add(Counter.COLLAPSES, stats.collapses);
+        add(Counter.PROPAGATIONS, stats.propagations);
+        add(Counter.DOMAIN_REDUCTIONS, stats.domainReductions);
+        add(Counter.CONTRADICTIONS, stats.contradictions);
+        add(Counter.BACKTRACKS, stats.backtracks);
+        add(Counter.BLOCK_RETRIES, stats.blockRetries);
+        add(Counter.FALLBACK_CELLS, stats.fallbackCells);
+        solveTimes.record(nanos);
+    }
+
+    public static void recordRuleLoad(long nanos) {
+        if (!enabled) return;
+        add(Counter.RULE_LOADS, 1);
+        add(Counter.RULE_LOAD_NANOS, nanos);
+    }
+
+    private static void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    // Upper bound of the bucket holding the p-th fraction of solve times, in nanoseconds
+    public static long solveTimePercentile(double p) {
+        return solveTimes.percentile(p);
+    }
+
+    // All counters plus the derived hit rates and solve time figures, in a stable order
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) values.put(counter.key, get(counter));
+
+        long hits = get(Counter.CHUNK_HITS);
+        long lookups = hits + get(Counter.CHUNK_MISSES) + get(Counter.CHUNK_STORE_LOADS);
+        values.put("chunkHitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+
+        // Settled prefetches only; those still outstanding are neither hits nor waste yet
+        long prefetchHits = get(Counter.PREFETCH_HITS);
+        long settled = prefetchHits + get(Counter.PREFETCH_WASTED) + get(Counter.PREFETCH_CANCELLED);
+        values.put("prefetchHitRate", settled == 0 ? 0.0 : (double) prefetchHits / settled);
+        values.put("prefetchWasteRate", settled == 0 ? 0.0 : (double) get(Counter.PREFETCH_WASTED) / settled);
+
+        long solved = get(Counter.CHUNKS_SOLVED);
+        values.put("solveMeanMs", solved == 0 ? 0.0 : get(Counter.SOLVE_NANOS) / 1e6 / solved);
+        values.put("solveP50Ms", solveTimePercentile(0.50) / 1e6);
+        values.put("solveP90Ms", solveTimePercentile(0.90) / 1e6);
+        values.put("solveP99Ms", solveTimePercentile(0.99) / 1e6);
+        values.put("solveMaxMs", solveTimePercentile(1.0) / 1e6);
+        return values;
+    }
+
+    public static String toJson(Map<String, Number> values) {
+        StringBuilder sb = new StringBuilder("{\n");
+        int i = 0;
+        for (Map.Entry<String, Number> e : values.entrySet()) {
+            sb.append("  \"").append(e.getKey()).append("\": ").append(e.getValue());
+            sb.append(++i < values.size() ? ",\n" : "\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    public static String toCsv(Map<String, Number> values) {
+        StringBuilder sb = new StringBuilder("metric,value\n");
+        for (Map.Entry<String, Number> e : values.entrySet()) {
+            sb.append(e.getKey()).append(',').append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Writes the current snapshot as CSV if the file name ends in .csv, otherwise as JSON
+    public static void dump(Path file) throws IOException {
+        Map<String, Number> values = snapshot();
+        String text = file.getFileName().toString().endsWith(".csv") ? toCsv(values) : toJson(values);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Log-linear histogram: 8 buckets per power of two, so percentiles are within 12.5%
+    private static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_COUNT);
+
+        void record(long value) {
+            buckets.incrementAndGet(index(Math.max(0, value)));
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+        }
+
+        long percentile(double p) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) total += buckets.get(i);
+            if (total == 0) return 0;
+
+            long target = Math.max(1, (long) Math.ceil(p * total));
+            long seen = 0;
+            int last = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                long n = buckets.get(i);
+                if (n == 0) continue;
+                seen += n;
+                last = i;
+                if (seen >= target) break;
+            }
+            return upperBound(last);
+        }
+
+        private static int index(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            return ((exp - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB_COUNT) return index;
+            int shift = (index >>> SUB_BITS) - 1;
+            long lower = (long) (SUB_COUNT + (index & (SUB_COUNT - 1))) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+// Merges runs of equal cells of a grid into rectangles: each unvisited cell grows right while the
+// next cell has the same key, then down while the whole row below matches. Keys that may only merge
+// along one axis (a half block only lines up with its neighbours on one side) are restricted by the
+// caller. Pure Java, so it runs without a GL context.
+final class GreedyMesher {
+
+    interface RectSink {
+        void rect(int x, int y, int width, int height, int key);
+    }
+
+    interface MergeRule {
+        boolean merges(int key);
+    }
+
+    private boolean[] visited = new boolean[0];
+
+    // keys is row major, width x height; cells with a negative key are skipped
+    public void mesh(int[] keys, int width, int height, MergeRule horizontal, MergeRule vertical, RectSink sink) {
+        int cells = width * height;
+        if (visited.length < cells) visited = new boolean[cells];
+        Arrays.fill(visited, 0, cells, false);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int key = keys[i];
+                if (key < 0 || visited[i]) continue;
+
+                int w = 1;
+                if (horizontal.merges(key)) {
+                    while (x + w < width && keys[i + w] == key && !visited[i + w]) w++;
+                }
+
+                int h = 1;
+                if (vertical.merges(key)) {
+                    while (y + h < height && rowMatches(keys, (y + h) * width + x, w, key)) h++;
+                }
+
+                for (int dy = 0; dy < h; dy++) Arrays.fill(visited, i + dy * width, i + dy * width + w, true);
+                sink.rect(x, y, w, h, key);
+            }
+        }
+    }
+
+    private boolean rowMatches(int[] keys, int start, int w, int key) {
+        for (int i = start; i < start + w; i++) {
+            if (keys[i] != key || visited[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+// Solves grids far larger than a chunk as a sequence of tileSize x tileSize sub-solves. Tiles are
+// laid out row by row and overlap by `overlap` cells; each tile only keeps the cells up to where the
+// next one starts, so its border is solved with some lookahead. Already kept cells reach the next
+// tile as EdgeConstraints, exactly like neighbouring chunks do. A tile that still has fallback
+// cells after the solver's own recovery is solved again with another seed, on its own.
+//
+// Only one band of tiles is held at a time, so memory is tileSize x width on top of one tile solve,
+// and work grows with the grid area.
+class LargeGridSolver {
+    private static final ThreadLocal<LargeGridSolver> ARENA = ThreadLocal.withInitial(LargeGridSolver::new);
+
+    public static final int DEFAULT_TILE_SIZE = 32;
+    public static final int DEFAULT_OVERLAP = 4;
+    public static final int DEFAULT_MAX_TILE_ATTEMPTS = 4;
+
+    // Receives each finished row of the grid, top to bottom. Only the first `size` entries belong to the
+    // row, and the array is reused once accept returns.
+    interface RowSink {
+        void accept(int y, int[] row);
+    }
+
+    private final int tileSize;
+    private final int overlap;
+    private final int maxTileAttempts;
+
+    private final EdgeConstraints tileEdges = new EdgeConstraints();
+    private final int[][] tileOutput;
+    private int[][] band = new int[0][0];
+    private int[] aboveRow = new int[0];
+
+    private final SolveStats stats = new SolveStats();
+    private final SolveStats attemptStats = new SolveStats();
+    private int tileCount;
+    private int tileRetries;
+
+    public LargeGridSolver() {
+        this(DEFAULT_TILE_SIZE, DEFAULT_OVERLAP, DEFAULT_MAX_TILE_ATTEMPTS);
+    }
+
+    public LargeGridSolver(int tileSize, int overlap, int maxTileAttempts) {
+        if (overlap < 0 || overlap >= tileSize) throw new IllegalArgumentException("Overlap must be in [0, " + tileSize + ")");
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        this.maxTileAttempts = Math.max(1, maxTileAttempts);
+        this.tileOutput = new int[tileSize][tileSize];
+    }
+
+    // The large-grid solver owned by the calling thread; its tile solves run on the thread's WfcSolver
+    public static LargeGridSolver forCurrentThread() {
+        return ARENA.get();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    // Summed counters of the kept attempt of every tile in the last solve
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public int getTileRetries() {
+        return tileRetries;
+    }
+
+    // Solves a size x size grid into out, indexed [y][x]
+    public void solve(int size, CompiledWfcRules rules, long seed, EdgeConstraints outer, int[][] out) {
+        solve(size, rules, seed, outer, (y, row) -> System.arraycopy(row, 0, out[y], 0, size));
+    }
+
+    // Solves a size x size grid and streams it to sink row by row. The outer constraints apply to the
+    // grid's own borders; the result only depends on the rules, seed and constraints.
+    public void solve(int size, CompiledWfcRules rules, long seed, EdgeConstraints outer, RowSink sink) {
+        stats.reset();
+        tileCount = 0;
+        tileRetries = 0;
+
+        WfcSolver solver = WfcSolver.forCurrentThread();
+        if (size <= tileSize) {
+            int[][] grid = size == tileSize ? tileOutput : new int[size][size];
+            if (outer == null) tileEdges.clear();
+            solver.solve(size, rules, seed, outer != null ? outer : tileEdges, grid);
+            stats.add(solver.getStats());
+            tileCount = 1;
+            for (int y = 0; y < size; y++) sink.accept(y, grid[y]);
+            return;
+        }
+
+        if (band.length < tileSize || band[0].length < size) band = new int[tileSize][size];
+        if (aboveRow.length < size) aboveRow = new int[size];
+        int[] starts = tileStarts(size);
+
+        for (int by = 0; by < starts.length; by++) {
+            int y0 = starts[by];
+            for (int bx = 0; bx < starts.length; bx++) {
+                int x0 = starts[bx];
+                solveTile(solver, rules, tileSeed(seed, bx, by), outer, size, x0, y0);
+            }
+
+            // Rows from where the next band starts are solved again by that band
+            int keepEnd = by + 1 < starts.length ? starts[by + 1] : size;
+            for (int y = y0; y < keepEnd; y++) sink.accept(y, band[y - y0]);
+            System.arraycopy(band[keepEnd - 1 - y0], 0, aboveRow, 0, size);
+        }
+    }
+
+    // Tile origins along one axis: a fixed stride, with the last tile pulled back to end on the border
+    private int[] tileStarts(int size) {
+        int stride = tileSize - overlap;
+        int count = 1;
+        while ((count - 1) * stride + tileSize < size) count++;
+
+        int[] starts = new int[count];
+        for (int i = 0; i < count - 1; i++) starts[i] = i * stride;
+        starts[count - 1] = size - tileSize;
+        return starts;
+    }
+
+    private void solveTile(WfcSolver solver, CompiledWfcRules rules, long seed, EdgeConstraints outer,
+                           int size, int x0, int y0) {
+        fillTileEdges(outer, size, x0, y0);
+        tileCount++;
+
+        int bestFallback = Integer.MAX_VALUE;
+        for (int attempt = 0; attempt < maxTileAttempts && bestFallback > 0; attempt++) {
+            if (attempt > 0) tileRetries++;
+
+            solver.solve(tileSize, rules, seed + attempt, tileEdges, tileOutput);
+            SolveStats s = solver.getStats();
+            if (s.fallbackCells >= bestFallback) continue;
+
+            bestFallback = s.fallbackCells;
+            attemptStats.reset();
+            attemptStats.add(s);
+            for (int y = 0; y < tileSize; y++) System.arraycopy(tileOutput[y], 0, band[y], x0, tileSize);
+        }
+        stats.add(attemptStats);
+    }
+
+    // Kept cells above and to the left, and the grid's own edges where the tile touches them
+    private void fillTileEdges(EdgeConstraints outer, int size, int x0, int y0) {
+        tileEdges.clear();
+
+        if (y0 > 0) {
+            System.arraycopy(aboveRow, x0, tileEdges.setTopEdge(tileSize), 0, tileSize);
+        } else if (outer != null && outer.topEdge != null) {
+            System.arraycopy(outer.topEdge, x0, tileEdges.setTopEdge(tileSize), 0, tileSize);
+        }
+
+        if (y0 + tileSize == size && outer != null && outer.bottomEdge != null) {
+            System.arraycopy(outer.bottomEdge, x0, tileEdges.setBottomEdge(tileSize), 0, tileSize);
+        }
+
+        if (x0 > 0) {
+            int[] left = tileEdges.setLeftEdge(tileSize);
+            for (int y = 0; y < tileSize; y++) left[y] = band[y][x0 - 1];
+        } else if (outer != null && outer.leftEdge != null) {
+            System.arraycopy(outer.leftEdge, y0, tileEdges.setLeftEdge(tileSize), 0, tileSize);
+        }
+
+        if (x0 + tileSize == size && outer != null && outer.rightEdge != null) {
+            System.arraycopy(outer.rightEdge, y0, tileEdges.setRightEdge(tileSize), 0, tileSize);
+        }
+    }
+
+    private static long tileSeed(long seed, int tileX, int tileY) {
+        long z = seed + tileX * 0x9E3779B97F4A7C15L + tileY * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
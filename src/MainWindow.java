@@ -3,7 +3,10 @@ import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.system.MemoryStack;
 
+import java.io.IOException;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
@@ -16,10 +19,27 @@ public class MainWindow {
     private long window;
     private WorldRenderer worldRenderer;
     private ChunkGenerator chunkGenerator;
+    private ChunkGenerationService generationService;
+    private RegionStore regionStore;
 
+    public static final String TITLE = "World Renderer";
     private static final int WIDTH = 1000;
     private static final int HEIGHT = 1000;
 
+    // Loaded chunks are evicted least-recently-seen first once either limit is reached
+    private static final int CHUNK_BUDGET = 16384;
+    private static final long CHUNK_MEMORY_BUDGET = 64L << 20;
+
+    // Generation threads; with 0 chunks are solved on this thread in slices, spending at most
+    // gen.frameBudgetMs per frame on them so frames stay short however many chunks are pending
+    private static final int GENERATION_THREADS =
+            Integer.getInteger("gen.threads", ChunkGenerationService.defaultThreadCount());
+    private static final long FRAME_GENERATION_NANOS =
+            (long) (Double.parseDouble(System.getProperty("gen.frameBudgetMs", "4")) * 1_000_000);
+
+    // Explored chunks are saved here and loaded back on the next run
+    private static final Path WORLD_DIRECTORY = Paths.get(System.getProperty("world.dir", "world"));
+
     public void run() {
         init();
         loop();
@@ -36,7 +56,7 @@ public class MainWindow {
         glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
         glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
 
-        window = glfwCreateWindow(WIDTH, HEIGHT, "World Renderer", NULL, NULL);
+        window = glfwCreateWindow(WIDTH, HEIGHT, TITLE, NULL, NULL);
         if (window == NULL)
             throw new RuntimeException("Failed to create the GLFW window");
 
@@ -67,8 +87,18 @@ public class MainWindow {
         glOrtho(0, WIDTH, HEIGHT, 0, -1, 1);
         glMatrixMode(GL_MODELVIEW);
 
-        chunkGenerator = new ChunkGenerator();
-        worldRenderer = new WorldRenderer(chunkGenerator, window, WIDTH, HEIGHT);
+        try {
+            long seed = RegionStore.loadOrCreateSeed(WORLD_DIRECTORY, System.nanoTime());
+            chunkGenerator = new ChunkGenerator(seed);
+            regionStore = new RegionStore(WORLD_DIRECTORY, ChunkGenerator.CHUNK_SIZE, seed);
+            chunkGenerator.setRegionStore(regionStore);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Could not open world in " + WORLD_DIRECTORY + ", not saving chunks: " + e);
+            chunkGenerator = new ChunkGenerator();
+        }
+        chunkGenerator.setChunkBudget(CHUNK_BUDGET, CHUNK_MEMORY_BUDGET);
+        generationService = new ChunkGenerationService(chunkGenerator, GENERATION_THREADS);
+        worldRenderer = new WorldRenderer(chunkGenerator, generationService, window, WIDTH, HEIGHT);
     }
 
     private void loop() {
@@ -76,6 +106,7 @@ public class MainWindow {
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
             worldRenderer.render();
+            if (generationService.isSliced()) generationService.runFor(FRAME_GENERATION_NANOS);
 
             glfwSwapBuffers(window);
             glfwPollEvents();
@@ -83,6 +114,9 @@ public class MainWindow {
     }
 
     private void cleanup() {
+        generationService.shutdown();
+        worldRenderer.dispose();
+        if (regionStore != null) regionStore.close();
         glfwFreeCallbacks(window);
         glfwDestroyWindow(window);
         glfwTerminate();
@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.List;
+
+// Overlapping WFC model: every NxN window of the examples (optionally in all 8 rotations/reflections)
+// becomes a pattern, and two patterns may be neighbours when they agree on the N x (N-1) strip they
+// share. The solver then places patterns, and each cell shows the top-left tile of its pattern.
+//
+// Windows are deduplicated through a 2D rolling hash, and compatibility is found by bucketing
+// patterns by the hash of their overlap strip, so building costs O(windows + compatible pairs)
+// rather than comparing every pattern with every other one.
+final class OverlappingModel {
+    private static final long ROW_BASE = 0x9E3779B97F4A7C15L;
+    private static final long COLUMN_BASE = 0xC2B2AE3D27D4EB4FL;
+
+    private final int n;
+    private final boolean symmetry;
+
+    // Pattern p occupies patternTiles[p * n * n ..], row major
+    private byte[] patternTiles = new byte[0];
+    private double[] frequencies = new double[0];
+    private int patternCount;
+
+    private long[] tableHashes = new long[64];
+    private int[] tablePatterns = new int[64];
+
+    // Powers of the bases used to roll windows along rows and down columns
+    private final long rowPower;
+    private final long columnPower;
+    private final byte[] window;
+    private final byte[] variant;
+
+    OverlappingModel(int n, boolean symmetry) {
+        if (n < 2) throw new IllegalArgumentException("Pattern size must be at least 2, got " + n);
+        this.n = n;
+        this.symmetry = symmetry;
+        this.window = new byte[n * n];
+        this.variant = new byte[n * n];
+        Arrays.fill(tablePatterns, -1);
+
+        long r = 1, c = 1;
+        for (int i = 0; i < n - 1; i++) {
+            r *= ROW_BASE;
+            c *= COLUMN_BASE;
+        }
+        rowPower = r;
+        columnPower = c;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public void learnFromExample(int[][] example) {
+        int h = example.length;
+        int w = example[0].length;
+        if (h < n || w < n) return;
+
+        // rowHashes[y * w + x]: hash of the n tiles example[y][x .. x+n-1]
+        long[] rowHashes = new long[h * w];
+        for (int y = 0; y < h; y++) {
+            long hash = 0;
+            for (int x = 0; x < w; x++) {
+                if (x >= n) hash -= example[y][x - n] * rowPower;
+                hash = hash * ROW_BASE + example[y][x];
+                if (x >= n - 1) rowHashes[y * w + x - n + 1] = hash;
+            }
+        }
+
+        for (int x = 0; x + n <= w; x++) {
+            long hash = 0;
+            for (int y = 0; y < h; y++) {
+                if (y >= n) hash -= rowHashes[(y - n) * w + x] * columnPower;
+                hash = hash * COLUMN_BASE + rowHashes[y * w + x];
+                if (y < n - 1) continue;
+
+                int top = y - n + 1;
+                for (int dy = 0; dy < n; dy++)
+                    for (int dx = 0; dx < n; dx++)
+                        window[dy * n + dx] = (byte) example[top + dy][x + dx];
+
+                add(window, hash);
+                if (symmetry) addVariants();
+            }
+        }
+    }
+
+    // The other 7 rotations and reflections of the current window
+    private void addVariants() {
+        for (int v = 1; v < 8; v++) {
+            for (int y = 0; y < n; y++) {
+                for (int x = 0; x < n; x++) {
+                    int sx = x, sy = y;
+                    if ((v & 4) != 0) sx = n - 1 - sx;
+                    for (int r = 0; r < (v & 3); r++) {
+                        int t = sx;
+                        sx = n - 1 - sy;
+                        sy = t;
+                    }
+                    variant[y * n + x] = window[sy * n + sx];
+                }
+            }
+            add(variant, hashRegion(variant, 0, 0, 0, n, n, n));
+        }
+    }
+
+    private void add(byte[] tiles, long hash) {
+        int mask = tableHashes.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            int p = tablePatterns[i];
+            if (p < 0) break;
+            if (tableHashes[i] == hash && samePattern(p, tiles)) {
+                frequencies[p]++;
+                return;
+            }
+        }
+
+        int p = patternCount++;
+        if (p == frequencies.length) {
+            int capacity = Math.max(16, p * 2);
+            frequencies = Arrays.copyOf(frequencies, capacity);
+            patternTiles = Arrays.copyOf(patternTiles, capacity * n * n);
+        }
+        System.arraycopy(tiles, 0, patternTiles, p * n * n, n * n);
+        frequencies[p] = 1;
+
+        if (patternCount * 2 > tableHashes.length) growTable();
+        insert(tableHashes, tablePatterns, hash, p);
+    }
+
+    private boolean samePattern(int p, byte[] tiles) {
+        int base = p * n * n;
+        for (int i = 0; i < n * n; i++) {
+            if (patternTiles[base + i] != tiles[i]) return false;
+        }
+        return true;
+    }
+
+    private void growTable() {
+        long[] hashes = new long[tableHashes.length * 2];
+        int[] patterns = new int[hashes.length];
+        Arrays.fill(patterns, -1);
+        for (int i = 0; i < tableHashes.length; i++) {
+            if (tablePatterns[i] >= 0) insert(hashes, patterns, tableHashes[i], tablePatterns[i]);
+        }
+        tableHashes = hashes;
+        tablePatterns = patterns;
+    }
+
+    private static void insert(long[] hashes, int[] values, long hash, int value) {
+        int mask = hashes.length - 1;
+        int i = mix(hash) & mask;
+        while (values[i] >= 0) i = (i + 1) & mask;
+        hashes[i] = hash;
+        values[i] = value;
+    }
+
+    private static int mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return (int) (hash ^ (hash >>> 33));
+    }
+
+    // Same polynomial as the rolling hash, over a w x h region of a pattern stored with the given stride
+    private static long hashRegion(byte[] tiles, int offset, int x0, int y0, int w, int h, int stride) {
+        long hash = 0;
+        for (int y = y0; y < y0 + h; y++) {
+            long row = 0;
+            for (int x = x0; x < x0 + w; x++) row = row * ROW_BASE + (tiles[offset + y * stride + x] & 0xFF);
+            hash = hash * COLUMN_BASE + row;
+        }
+        return hash;
+    }
+
+    private boolean sameRegion(int p, int px, int py, int q, int qx, int qy, int w, int h) {
+        int pBase = p * n * n;
+        int qBase = q * n * n;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (patternTiles[pBase + (py + y) * n + px + x] != patternTiles[qBase + (qy + y) * n + qx + x])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // Freezes the patterns into solver rules. Chunk edges hold plain tiles, so edge constraints use
+    // tile adjacency learned from the same examples, applied to each pattern's output tile.
+    public CompiledWfcRules compile(List<int[][]> examples, int maxTileId) {
+        int words = (patternCount + 63) >>> 6;
+        long[][] compatible = new long[4][patternCount * words];
+        link(compatible, words, 1, 0, CompiledWfcRules.EAST, CompiledWfcRules.WEST);
+        link(compatible, words, 0, 1, CompiledWfcRules.SOUTH, CompiledWfcRules.NORTH);
+
+        int[] outputTiles = new int[patternCount];
+        for (int p = 0; p < patternCount; p++) outputTiles[p] = patternTiles[p * n * n] & 0xFF;
+
+        WfcRules tileRules = new WfcRules(maxTileId);
+        for (int[][] example : examples) tileRules.learnFromExample(example);
+        CompiledWfcRules tiles = tileRules.compile();
+
+        int tileCount = tiles.getTileCount();
+        long[][] edgeCompatible = new long[4][tileCount * words];
+        for (int dir = 0; dir < 4; dir++) {
+            for (int t = 0; t < tileCount; t++) {
+                for (int p = 0; p < patternCount; p++) {
+                    if (outputTiles[p] < tileCount && tiles.isAllowed(t, outputTiles[p], dir))
+                        edgeCompatible[dir][t * words + (p >>> 6)] |= 1L << p;
+                }
+            }
+        }
+
+        return new CompiledWfcRules(patternCount, compatible, Arrays.copyOf(frequencies, patternCount),
+                outputTiles, tileCount, edgeCompatible);
+    }
+
+    // Pattern q may sit at (+dx, +dy) from p when p without its first column/row equals q without its last
+    private void link(long[][] compatible, int words, int dx, int dy, int dir, int opposite) {
+        int w = n - dx;
+        int h = n - dy;
+
+        // Bucket every pattern by the hash of its leading strip, chained through next[]
+        int capacity = Integer.highestOneBit(Math.max(1, patternCount) * 2) * 2;
+        long[] bucketHashes = new long[capacity];
+        int[] heads = new int[capacity];
+        Arrays.fill(heads, -1);
+        int[] next = new int[patternCount];
+        for (int q = 0; q < patternCount; q++) {
+            long hash = hashRegion(patternTiles, q * n * n, 0, 0, w, h, n);
+            int mask = capacity - 1;
+            int i = mix(hash) & mask;
+            while (heads[i] >= 0 && bucketHashes[i] != hash) i = (i + 1) & mask;
+            bucketHashes[i] = hash;
+            next[q] = heads[i];
+            heads[i] = q;
+        }
+
+        for (int p = 0; p < patternCount; p++) {
+            long hash = hashRegion(patternTiles, p * n * n, dx, dy, w, h, n);
+            int mask = capacity - 1;
+            int i = mix(hash) & mask;
+            while (heads[i] >= 0 && bucketHashes[i] != hash) i = (i + 1) & mask;
+
+            for (int q = heads[i]; q >= 0; q = next[q]) {
+                if (!sameRegion(p, dx, dy, q, 0, 0, w, h)) continue;
+                compatible[dir][p * words + (q >>> 6)] |= 1L << q;
+                compatible[opposite][q * words + (p >>> 6)] |= 1L << p;
+            }
+        }
+    }
+}
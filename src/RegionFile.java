@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+// One file per ChunkIndex region. A fixed header maps every chunk slot of the region to a payload;
+// payloads are only ever appended, so saving a chunk never rewrites existing data.
+//
+// Header: magic, version, chunk size, world seed, then one entry per slot of
+// (payload offset, payload length, payload CRC, entry CRC). An entry is written after its payload and
+// its CRC covers the other three fields, so after a crash a slot is either intact or reads as empty
+// and the chunk is generated again.
+final class RegionFile {
+    static final int MAGIC = 0x57464352; // "WFCR"
+    static final int VERSION = 1;
+
+    private static final int PREAMBLE_BYTES = 24;
+    private static final int ENTRY_BYTES = 16;
+    private static final int SLOTS = ChunkIndex.REGION_SIZE * ChunkIndex.REGION_SIZE;
+    static final int HEADER_BYTES = PREAMBLE_BYTES + SLOTS * ENTRY_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    // Read-only view of the file up to its size when last mapped; remapped once payloads go past it
+    private MappedByteBuffer data;
+    private long end;
+
+    RegionFile(Path path, int chunkSize, long worldSeed) throws IOException {
+        channel = FileChannel.open(path, READ, WRITE, CREATE);
+        try {
+            // Mapping past the end grows the file; the new entries are zero, which never passes the entry CRC
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (header.getInt(0) == 0) {
+                header.putInt(4, VERSION);
+                header.putInt(8, chunkSize);
+                header.putLong(12, worldSeed);
+                header.putInt(0, MAGIC);
+                header.force();
+            } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(path + " is not a version " + VERSION + " region file");
+            } else if (header.getInt(8) != chunkSize || header.getLong(12) != worldSeed) {
+                throw new IOException(path + " belongs to a different world (chunk size "
+                        + header.getInt(8) + ", seed " + header.getLong(12) + ")");
+            }
+            end = Math.max(channel.size(), HEADER_BYTES);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Slice of the mapped file holding the slot's payload, or null if the slot is empty or damaged
+    synchronized ByteBuffer read(int slot) throws IOException {
+        int entry = PREAMBLE_BYTES + slot * ENTRY_BYTES;
+        int offset = header.getInt(entry);
+        int length = header.getInt(entry + 4);
+        int crc = header.getInt(entry + 8);
+        if (header.getInt(entry + 12) != entryCrc(offset, length, crc)) return null;
+        if (offset < HEADER_BYTES || length <= 0 || (long) offset + length > end) return null;
+
+        if (data == null || offset + length > data.capacity()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+        ByteBuffer payload = data.slice(offset, length);
+        return crc(payload) == crc ? payload : null;
+    }
+
+    // Appends the payload and points the slot at it
+    synchronized void write(int slot, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        int crc = crc(payload);
+        long offset = end;
+        if (offset + length > Integer.MAX_VALUE) throw new IOException("Region file is full");
+
+        for (long position = offset; payload.hasRemaining(); ) {
+            position += channel.write(payload, position);
+        }
+        end = offset + length;
+
+        int entry = PREAMBLE_BYTES + slot * ENTRY_BYTES;
+        header.putInt(entry, (int) offset);
+        header.putInt(entry + 4, length);
+        header.putInt(entry + 8, crc);
+        header.putInt(entry + 12, entryCrc((int) offset, length, crc));
+    }
+
+    // Payloads first, then the header, so a header entry never reaches the disk ahead of its payload
+    synchronized void flush() throws IOException {
+        channel.force(false);
+        header.force();
+    }
+
+    synchronized void close() throws IOException {
+        try {
+            if (channel.isOpen()) flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static int entryCrc(int offset, int length, int payloadCrc) {
+        ByteBuffer fields = ByteBuffer.allocate(12).putInt(offset).putInt(length).putInt(payloadCrc);
+        CRC32 crc = new CRC32();
+        crc.update(fields.array());
+        return (int) crc.getValue();
+    }
+}
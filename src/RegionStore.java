@@ -0,0 +1,149 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Persists generated chunks in region files under one directory, so a world that was explored before
+// loads from disk instead of being solved again. Stored chunks win over regeneration, even if the
+// rule files changed since they were written.
+public class RegionStore {
+
+    private static final String SEED_FILE = "world.seed";
+    private static final int MAX_OPEN_FILES = 64;
+
+    private final Path directory;
+    private final int chunkSize;
+    private final long worldSeed;
+    private final ByteBuffer writeBuffer;
+    private boolean closed;
+
+    // Least recently used region files are closed once more than MAX_OPEN_FILES are open
+    private final LinkedHashMap<Long, RegionFile> openFiles = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RegionFile> eldest) {
+            if (size() <= MAX_OPEN_FILES) return false;
+            closeQuietly(eldest.getValue());
+            return true;
+        }
+    };
+
+    public RegionStore(Path directory, int chunkSize, long worldSeed) throws IOException {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.worldSeed = worldSeed;
+        // Openings byte plus the largest possible tile layer: 8 bits per tile and a full palette
+        writeBuffer = ByteBuffer.allocate(1 + 2 + 256 + ((chunkSize * chunkSize + 7) / 8) * 8);
+        Files.createDirectories(directory);
+    }
+
+    // Seed of the world saved in the directory, or newSeed (which is then saved) for a new world
+    public static long loadOrCreateSeed(Path directory, long newSeed) throws IOException {
+        Path seedFile = directory.resolve(SEED_FILE);
+        if (Files.exists(seedFile)) {
+            return Long.parseLong(new String(Files.readAllBytes(seedFile), StandardCharsets.UTF_8).trim());
+        }
+        Files.createDirectories(directory);
+        Files.write(seedFile, Long.toString(newSeed).getBytes(StandardCharsets.UTF_8));
+        return newSeed;
+    }
+
+    // The stored chunk at (x, y), or null if it was never saved or its record is damaged
+    public synchronized Chunk load(int x, int y, ChunkGenerator generator) {
+        if (closed) return null;
+
+        RegionFile file = null;
+        try {
+            file = file(x, y);
+            ByteBuffer payload = file.read(ChunkIndex.slot(x, y));
+            if (payload == null) return null;
+
+            Set<Chunk.Direction> openings = EnumSet.noneOf(Chunk.Direction.class);
+            int openingBits = payload.get();
+            for (Chunk.Direction dir : Chunk.Direction.values()) {
+                if ((openingBits & (1 << dir.ordinal())) != 0) openings.add(dir);
+            }
+            return new Chunk(x, y, generator, TileLayer.readFrom(payload, chunkSize), openings);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load chunk (" + x + ", " + y + ") from " + directory + ": " + e);
+            drop(x, y, file);
+            return null;
+        }
+    }
+
+    public synchronized void save(Chunk chunk) {
+        if (closed) return;
+
+        int x = chunk.xWorldLocation;
+        int y = chunk.yWorldLocation;
+        RegionFile file = null;
+        try {
+            file = file(x, y);
+
+            int openingBits = 0;
+            for (Chunk.Direction dir : chunk.getOpenings()) openingBits |= 1 << dir.ordinal();
+            writeBuffer.clear();
+            writeBuffer.put((byte) openingBits);
+            chunk.getTileLayer().writeTo(writeBuffer);
+            writeBuffer.flip();
+
+            file.write(ChunkIndex.slot(x, y), writeBuffer);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not save chunk (" + x + ", " + y + ") to " + directory + ": " + e);
+            drop(x, y, file);
+        }
+    }
+
+    // Forces everything written so far to disk
+    public synchronized void flush() {
+        for (RegionFile file : openFiles.values()) {
+            try {
+                file.flush();
+            } catch (IOException e) {
+                System.err.println("Could not flush region file in " + directory + ": " + e);
+            }
+        }
+    }
+
+    public synchronized void close() {
+        closed = true;
+        for (Iterator<RegionFile> it = openFiles.values().iterator(); it.hasNext(); ) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+    }
+
+    private RegionFile file(int x, int y) throws IOException {
+        int regionX = x >> ChunkIndex.REGION_SHIFT;
+        int regionY = y >> ChunkIndex.REGION_SHIFT;
+        long key = ((long) regionX << 32) | (regionY & 0xFFFFFFFFL);
+
+        RegionFile file = openFiles.get(key);
+        if (file == null) {
+            file = new RegionFile(directory.resolve("r." + regionX + "." + regionY + ".wfcr"), chunkSize, worldSeed);
+            openFiles.put(key, file);
+        }
+        return file;
+    }
+
+    // Forgets a file after an error (e.g. a channel closed by an interrupt) so the next access reopens it
+    private void drop(int x, int y, RegionFile file) {
+        if (file == null) return;
+        long key = ((long) (x >> ChunkIndex.REGION_SHIFT) << 32) | ((y >> ChunkIndex.REGION_SHIFT) & 0xFFFFFFFFL);
+        openFiles.remove(key, file);
+        closeQuietly(file);
+    }
+
+    private void closeQuietly(RegionFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.err.println("Could not close region file in " + directory + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+// One LOD cell per chunk of a ChunkIndex region: the chunk's dominant tile and solid fraction. Summaries
+// outlive eviction, so zoomed-out views keep showing terrain that was explored once.
+final class RegionSummary {
+    public static final int SIZE = ChunkIndex.REGION_SIZE;
+
+    final int regionX, regionY;
+    private final byte[] dominant = new byte[SIZE * SIZE];
+    private final byte[] solid = new byte[SIZE * SIZE];
+    private final long[] known = new long[SIZE * SIZE / 64];
+    // Bumped on every change, so the renderer knows when its mesh is out of date
+    private volatile int version;
+
+    RegionSummary(int regionX, int regionY) {
+        this.regionX = regionX;
+        this.regionY = regionY;
+    }
+
+    synchronized void record(int chunkX, int chunkY, ChunkLod lod) {
+        int i = (chunkY & (SIZE - 1)) * SIZE + (chunkX & (SIZE - 1));
+        dominant[i] = (byte) lod.dominantTile();
+        solid[i] = (byte) lod.solidFraction();
+        known[i >>> 6] |= 1L << i;
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    // Mesher keys of all cells, row major: -1 for chunks never loaded or without any solid tiles
+    synchronized void fillKeys(int[] keys) {
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            boolean empty = (known[i >>> 6] & (1L << i)) == 0 || solid[i] == 0;
+            keys[i] = empty ? -1 : ChunkMeshBuilder.cellKey(dominant[i] & 0xFF, solid[i] & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("wfc.RuleLoad")
+@Label("Rule Load")
+@Category("Wave Function Collapse")
+@Description("Loading a rule set, from its compiled file or by learning it from the text examples")
+class RuleLoadEvent extends Event {
+    @Label("File")
+    String file;
+    @Label("From Compiled File")
+    boolean compiled;
+    @Label("Examples")
+    int examples;
+    @Label("Tiles")
+    int tiles;
+
+    void commit(String file, boolean compiled, RuleSet ruleSet) {
+        if (!shouldCommit()) return;
+        this.file = file;
+        this.compiled = compiled;
+        examples = ruleSet.getExampleCount();
+        tiles = ruleSet.hasExamples() ? ruleSet.getRules().getTileCount() : 0;
+        commit();
+    }
+}
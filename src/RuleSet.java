@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Rules learned from the examples of one rule file
+final class RuleSet {
+    public static final int MAX_TILE_ID = 17;
+
+    // A line "@overlapping N" (optionally followed by "symmetry") switches a file to the overlapping
+    // model with N x N patterns. Tile ids have a fixed orientation (slopes, corners), so symmetry only
+    // suits example sets whose tiles look the same rotated.
+    static final String OVERLAPPING_DIRECTIVE = "@overlapping";
+
+    private final String path;
+    private final long contentHash;
+    private final int exampleCount;
+    private final CompiledWfcRules rules;
+
+    RuleSet(String path, long contentHash, List<int[][]> examples) {
+        this.path = path;
+        this.contentHash = contentHash;
+        this.exampleCount = examples.size();
+
+        WfcRules builder = new WfcRules(MAX_TILE_ID);
+        for (int[][] ex : examples) {
+            builder.learnFromExample(ex);
+        }
+        this.rules = builder.compile();
+    }
+
+    // A rule set loaded from its compiled form
+    RuleSet(String path, long contentHash, int exampleCount, CompiledWfcRules rules) {
+        this.path = path;
+        this.contentHash = contentHash;
+        this.exampleCount = exampleCount;
+        this.rules = rules;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public boolean hasExamples() {
+        return exampleCount > 0;
+    }
+
+    public int getExampleCount() {
+        return exampleCount;
+    }
+
+    public CompiledWfcRules getRules() {
+        return rules;
+    }
+
+    // Learns the rules of a rule file's text, using the model its directives ask for
+    static RuleSet fromText(String path, long contentHash, String text, List<String> errors) {
+        List<int[][]> examples = parseExamples(text, errors);
+
+        int patternSize = 0;
+        boolean symmetry = false;
+        int lineNumber = 0;
+        for (String rawLine : text.split("\\R")) {
+            lineNumber++;
+            String[] parts = rawLine.trim().split("\\s+");
+            if (!parts[0].equals(OVERLAPPING_DIRECTIVE)) continue;
+
+            int size = -1;
+            try {
+                if (parts.length > 1) size = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            if (size < 2) {
+                errors.add("line " + lineNumber + ": expected " + OVERLAPPING_DIRECTIVE + " <pattern size of 2 or more> [symmetry]");
+                continue;
+            }
+            patternSize = size;
+            symmetry = parts.length > 2 && parts[2].equals("symmetry");
+        }
+
+        if (patternSize > 0) {
+            OverlappingModel model = new OverlappingModel(patternSize, symmetry);
+            for (int[][] ex : examples) model.learnFromExample(ex);
+            if (model.getPatternCount() > 0) {
+                return new RuleSet(path, contentHash, examples.size(), model.compile(examples, MAX_TILE_ID));
+            }
+            errors.add("no example is at least " + patternSize + "x" + patternSize + ", using the tiled model");
+        }
+        return new RuleSet(path, contentHash, examples);
+    }
+
+    // Examples are blocks of whitespace separated tile ids, split by "---" lines; "#" starts a comment
+    // and "@" a directive.
+    // Every problem is added to errors as "line N: ..."; an example with a bad token or ragged rows is
+    // left out entirely rather than teaching the solver adjacencies that were never drawn.
+    static List<int[][]> parseExamples(String text, List<String> errors) {
+        ArrayList<int[][]> examples = new ArrayList<>();
+        ArrayList<int[]> current = new ArrayList<>();
+        boolean currentValid = true;
+        int lineNumber = 0;
+
+        for (String rawLine : text.split("\\R")) {
+            lineNumber++;
+            String line = rawLine.trim();
+
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("@")) continue;
+
+            if (line.equals("---")) {
+                if (currentValid) addExample(examples, current);
+                current.clear();
+                currentValid = true;
+                continue;
+            }
+
+            String[] parts = line.split("\\s+");
+            int[] row = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                int tile = parseTile(parts[i]);
+                if (tile < 0) {
+                    errors.add("line " + lineNumber + ": '" + parts[i] + "' is not a tile id between 0 and " + MAX_TILE_ID);
+                    currentValid = false;
+                }
+                row[i] = tile;
+            }
+            if (!current.isEmpty() && current.get(0).length != row.length) {
+                errors.add("line " + lineNumber + ": row has " + row.length + " tiles, expected " + current.get(0).length);
+                currentValid = false;
+            }
+            current.add(row);
+        }
+        if (currentValid) addExample(examples, current);
+
+        return examples;
+    }
+
+    private static int parseTile(String token) {
+        try {
+            int tile = Integer.parseInt(token);
+            return tile >= 0 && tile <= MAX_TILE_ID ? tile : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void addExample(ArrayList<int[][]> examples, ArrayList<int[]> rows) {
+        if (rows.isEmpty()) return;
+
+        int[][] example = new int[rows.size()][];
+        for (int i = 0; i < rows.size(); i++)
+            example[i] = rows.get(i);
+        examples.add(example);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleSet(" + path + ", examples=" + exampleCount + ", hash=" + Long.toHexString(contentHash) + ")";
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Process-wide cache of rule sets keyed by source path; a file is only re-read after the watcher sees it change.
+// The text file is the source; learned rules are cached beside it by CompiledRuleFile and only
+// re-learned when the text no longer matches the hash stored in the compiled file.
+final class RuleSetRegistry {
+
+    private static final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    // Lookups by the name callers pass in, so the hot path does not resolve paths
+    private static final Map<String, Entry> entriesByName = new ConcurrentHashMap<>();
+    private static final Map<Path, Boolean> watchedDirectories = new ConcurrentHashMap<>();
+    private static WatchService watchService;
+
+    private static final class Entry {
+        final Path path;
+        volatile RuleSet ruleSet;
+        volatile boolean stale = true;
+        // Bumped on every change notice, so a change that arrives while the file is loading is not lost
+        volatile int changes;
+
+        Entry(Path path) {
+            this.path = path;
+        }
+
+        void markStale() {
+            changes++;
+            stale = true;
+        }
+    }
+
+    private RuleSetRegistry() {
+    }
+
+    public static RuleSet get(String filename) {
+        Entry entry = entriesByName.get(filename);
+        if (entry == null) {
+            Path path = Paths.get(filename).toAbsolutePath().normalize();
+            entry = entries.computeIfAbsent(path, Entry::new);
+            entriesByName.putIfAbsent(filename, entry);
+        }
+
+        // Lock-free only once rules are published; a first get() waits for the loading thread
+        RuleSet ruleSet = entry.ruleSet;
+        if (ruleSet != null && !entry.stale) return ruleSet;
+
+        synchronized (entry) {
+            if (entry.ruleSet == null || entry.stale) {
+                watch(entry.path.getParent());
+                int seen = entry.changes;
+                RuleSet loaded = load(filename, entry.path, entry.ruleSet);
+
+                // Readers that see stale cleared must also see the rules, so they are published first
+                entry.ruleSet = loaded;
+                entry.stale = false;
+                if (entry.changes != seen) entry.stale = true;
+            }
+            return entry.ruleSet;
+        }
+    }
+
+    // Forces the next get() of this file to re-read it
+    public static void invalidate(String filename) {
+        Entry entry = entries.get(Paths.get(filename).toAbsolutePath().normalize());
+        if (entry != null) entry.markStale();
+    }
+
+    private static RuleSet load(String filename, Path path, RuleSet previous) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        } catch (IOException e) {
+            System.err.println("Could not read rule set " + filename + ": " + e);
+            content = new byte[0];
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        long hash = (crc.getValue() << 32) | content.length;
+
+        // A touch without a content change keeps the already learned rules
+        if (previous != null && previous.getContentHash() == hash) return previous;
+
+        RuleLoadEvent event = new RuleLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        Path compiledPath = CompiledRuleFile.pathFor(path);
+        RuleSet ruleSet = null;
+        try {
+            ruleSet = CompiledRuleFile.read(compiledPath, filename, hash);
+        } catch (IOException e) {
+            System.err.println("Ignoring compiled rule set: " + e.getMessage());
+        }
+
+        boolean compiled = ruleSet != null;
+        if (!compiled) {
+            ruleSet = compile(filename, hash, content, compiledPath);
+        }
+        GenerationMetrics.recordRuleLoad(System.nanoTime() - start);
+        event.commit(filename, compiled, ruleSet);
+
+        if (!ruleSet.hasExamples()) {
+            System.err.println("No examples found in " + filename + "! Falling back to random terrain.");
+        }
+        return ruleSet;
+    }
+
+    private static RuleSet compile(String filename, long hash, byte[] content, Path compiledPath) {
+        List<String> errors = new ArrayList<>();
+        RuleSet ruleSet = RuleSet.fromText(filename, hash, new String(content), errors);
+        for (String error : errors) {
+            System.err.println(filename + ", " + error);
+        }
+
+        // A missing source is not worth caching
+        if (content.length > 0) {
+            try {
+                CompiledRuleFile.write(compiledPath, ruleSet);
+            } catch (IOException e) {
+                System.err.println("Could not write compiled rule set " + compiledPath + ": " + e);
+            }
+        }
+        return ruleSet;
+    }
+
+    private static synchronized void watch(Path directory) {
+        if (directory == null || watchedDirectories.containsKey(directory)) return;
+
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread watcher = new Thread(RuleSetRegistry::watchLoop, "rule-set-watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            }
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            watchedDirectories.put(directory, Boolean.TRUE);
+        } catch (IOException e) {
+            System.err.println("Could not watch " + directory + " for rule changes: " + e);
+        }
+    }
+
+    private static void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    for (Entry entry : entries.values()) entry.markStale();
+                    continue;
+                }
+                Entry entry = entries.get(directory.resolve((Path) event.context()));
+                if (entry != null) entry.markStale();
+            }
+            key.reset();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+// Builds chunks a slice at a time on a single thread, for ChunkGenerationService without workers. The
+// neighbours a chunk depends on are built first, each in slices too. Only one WFC solve is in progress
+// at a time, and it keeps its state in this builder's own solver between calls, so the chunks come out
+// exactly as grabChunk would make them.
+class SlicedChunkBuilder {
+    private final ChunkGenerator generator;
+    private final WfcSolver solver = new WfcSolver(ChunkGenerator.CHUNK_SIZE, 1);
+
+    // Unpublished chunk whose solve is in progress, for the target or one of its neighbours
+    private Chunk solving;
+
+    public SlicedChunkBuilder(ChunkGenerator generator) {
+        this.generator = generator;
+    }
+
+    // Works on the chunk at (atX, atY) until it is published or the deadline passes, and returns it once
+    // published. Keep calling with the same chunk until then.
+    public Chunk advance(int atX, int atY, long deadlineNanos) {
+        while (true) {
+            Chunk target = generator.getChunkIfExists(atX, atY);
+            if (target != null) return target;
+
+            if (solving == null) {
+                int[] next = nextMissing(atX, atY);
+                if (generator.loadStored(next[0], next[1]) != null) continue;
+                solving = Chunk.unsolved(next[0], next[1], generator);
+            }
+
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0 || !solving.solveSlice(solver, remaining)) return null;
+            generator.publishGenerated(solving);
+            solving = null;
+        }
+    }
+
+    // Drops the solve in progress, after it threw
+    public void abandon() {
+        solving = null;
+    }
+
+    // The chunk being solved if it is at (atX, atY), else null
+    public Chunk getSolving(int atX, int atY) {
+        Chunk chunk = solving;
+        return chunk != null && chunk.xWorldLocation == atX && chunk.yWorldLocation == atY ? chunk : null;
+    }
+
+    // A neighbour the chunk depends on that does not exist yet, or the chunk itself
+    private int[] nextMissing(int atX, int atY) {
+        if (ChunkGenerator.dependsOnNeighbours(atX, atY)) {
+            int[][] neighbours = {{atX, atY - 1}, {atX, atY + 1}, {atX - 1, atY}, {atX + 1, atY}};
+            for (int[] n : neighbours) {
+                if (generator.getChunkIfExists(n[0], n[1]) == null) return n;
+            }
+        }
+        return new int[]{atX, atY};
+    }
+}
@@ -0,0 +1,50 @@
+// Counters describing how much contradiction recovery one WFC solve needed
+class SolveStats {
+    public int collapses;
+    // Cells whose domain was pushed to their neighbours, and neighbour domains that shrank as a result
+    public int propagations;
+    public int domainReductions;
+    public int contradictions;
+    public int backtracks;
+    public int blockRetries;
+    public int fallbackCells;
+
+    public void reset() {
+        collapses = 0;
+        propagations = 0;
+        domainReductions = 0;
+        contradictions = 0;
+        backtracks = 0;
+        blockRetries = 0;
+        fallbackCells = 0;
+    }
+
+    public void add(SolveStats other) {
+        collapses += other.collapses;
+        propagations += other.propagations;
+        domainReductions += other.domainReductions;
+        contradictions += other.contradictions;
+        backtracks += other.backtracks;
+        blockRetries += other.blockRetries;
+        fallbackCells += other.fallbackCells;
+    }
+
+    public SolveStats copy() {
+        SolveStats c = new SolveStats();
+        c.collapses = collapses;
+        c.propagations = propagations;
+        c.domainReductions = domainReductions;
+        c.contradictions = contradictions;
+        c.backtracks = backtracks;
+        c.blockRetries = blockRetries;
+        c.fallbackCells = fallbackCells;
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return "SolveStats(collapses=" + collapses + ", propagations=" + propagations
+                + ", domainReductions=" + domainReductions + ", contradictions=" + contradictions + ", backtracks=" + backtracks
+                + ", blockRetries=" + blockRetries + ", fallbackCells=" + fallbackCells + ")";
+    }
+}
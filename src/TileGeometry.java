@@ -0,0 +1,121 @@
+// Shape and colour of every tile id, as data: a convex outline in tile units (x right, y down, corners
+// in order) and an RGB colour. Meshers, LOD summaries and exporters all read this table, so a new tile
+// shape is one new row. Ids without a row are drawn as red full blocks.
+final class TileGeometry {
+    private static final float H = 0.5f;
+
+    private static final float[][] OUTLINES = {
+            {},                                             // 0: air
+            {0, 0, 1, 0, 1, 1, 0, 1},                       // 1: full block
+            {0, 1, 1, 1, 1, 0},                             // 2: slope facing north (bottom-left to top-right)
+            {0, 0, 1, 1, 0, 1},                             // 3: slope facing south (top-left to bottom-right)
+            {0, 0, 1, 0, 1, 1},                             // 4: slope facing east (top-left to bottom-right)
+            {0, 0, 1, 0, 0, 1},                             // 5: slope facing west (bottom-left to top-right)
+            {0, H, 1, H, 1, 1, 0, 1},                       // 6: half block (bottom half)
+            {0, 0, 1, 0, 1, H, 0, H},                       // 7: half block (top half)
+            {0, 0, H, 0, H, 1, 0, 1},                       // 8: half block (left half)
+            {H, 0, 1, 0, 1, 1, H, 1},                       // 9: half block (right half)
+            {0, 0, 1, 0, 1, 1, H, 1, 0, H},                 // 10: convex corner (rounded bottom-right)
+            {0, 0, 1, 0, 1, H, H, 1, 0, 1},                 // 11: convex corner (rounded bottom-left)
+            {0, 0, H, 0, 1, H, 1, 1, 0, 1},                 // 12: convex corner (rounded top-right)
+            {0, H, H, 0, 1, 0, 1, 1, 0, 1},                 // 13: convex corner (rounded top-left)
+            {0, 0, H, 0, 0, H},                             // 14: corner triangle (bottom-left)
+            {1, 0, 1, H, H, 0},                             // 15: corner triangle (bottom-right)
+            {1, 1, H, 1, 1, H},                             // 16: corner triangle (top-right)
+            {0, 1, H, 1, 0, H},                             // 17: corner triangle (top-left)
+    };
+
+    private static final float[][] COLORS = {
+            {0.0f, 0.0f, 0.0f},
+            {0.0f, 1.0f, 0.0f},
+            {0.0f, 0.8f, 0.8f},
+            {0.8f, 0.8f, 0.0f},
+            {0.8f, 0.0f, 0.8f},
+            {1.0f, 0.5f, 0.0f},
+            {0.5f, 0.5f, 1.0f},
+            {1.0f, 0.5f, 0.5f},
+            {0.6f, 0.3f, 0.8f},
+            {0.8f, 0.3f, 0.6f},
+            {0.1f, 0.6f, 0.9f},
+            {0.1f, 0.6f, 0.9f},
+            {0.1f, 0.6f, 0.9f},
+            {0.1f, 0.6f, 0.9f},
+            {1.0f, 0.0f, 0.0f},
+            {1.0f, 0.0f, 0.0f},
+            {1.0f, 0.0f, 0.0f},
+            {1.0f, 0.0f, 0.0f},
+    };
+
+    private static final float[] UNKNOWN_OUTLINE = OUTLINES[1];
+    private static final float[] UNKNOWN_COLOR = {1.0f, 0.0f, 0.0f};
+
+    // Derived per id: area in eighths of a tile, and the bounds of shapes that are axis-aligned rectangles
+    private static final int[] EIGHTHS = new int[OUTLINES.length];
+    private static final float[][] RECTANGLES = new float[OUTLINES.length][];
+
+    static {
+        for (int tile = 0; tile < OUTLINES.length; tile++) {
+            float[] o = OUTLINES[tile];
+            EIGHTHS[tile] = Math.round(area(o) * 8);
+            RECTANGLES[tile] = rectangle(o);
+        }
+    }
+
+    private TileGeometry() {
+    }
+
+    public static int tileCount() {
+        return OUTLINES.length;
+    }
+
+    // x, y pairs of the convex outline; empty for air
+    public static float[] outline(int tile) {
+        return tile < OUTLINES.length ? OUTLINES[tile] : UNKNOWN_OUTLINE;
+    }
+
+    public static float[] color(int tile) {
+        return tile < COLORS.length ? COLORS[tile] : UNKNOWN_COLOR;
+    }
+
+    public static int areaEighths(int tile) {
+        return tile < EIGHTHS.length ? EIGHTHS[tile] : 8;
+    }
+
+    // {x0, y0, x1, y1} if the tile is an axis-aligned rectangle, otherwise null
+    public static float[] rectangle(int tile) {
+        return tile < RECTANGLES.length ? RECTANGLES[tile] : RECTANGLES[1];
+    }
+
+    // A rectangle reaching both side edges joins up with the same tile next to it, and one reaching the
+    // top and bottom edges with the same tile above or below
+    public static boolean joinsHorizontally(int tile) {
+        float[] r = rectangle(tile);
+        return r != null && r[0] == 0 && r[2] == 1;
+    }
+
+    public static boolean joinsVertically(int tile) {
+        float[] r = rectangle(tile);
+        return r != null && r[1] == 0 && r[3] == 1;
+    }
+
+    private static float area(float[] o) {
+        float twice = 0;
+        for (int i = 0; i < o.length; i += 2) {
+            int j = (i + 2) % o.length;
+            twice += o[i] * o[j + 1] - o[j] * o[i + 1];
+        }
+        return Math.abs(twice) / 2;
+    }
+
+    private static float[] rectangle(float[] o) {
+        if (o.length != 8) return null;
+        float x0 = Math.min(Math.min(o[0], o[2]), Math.min(o[4], o[6]));
+        float y0 = Math.min(Math.min(o[1], o[3]), Math.min(o[5], o[7]));
+        float x1 = Math.max(Math.max(o[0], o[2]), Math.max(o[4], o[6]));
+        float y1 = Math.max(Math.max(o[1], o[3]), Math.max(o[5], o[7]));
+        for (int i = 0; i < 8; i += 2) {
+            if ((o[i] != x0 && o[i] != x1) || (o[i + 1] != y0 && o[i + 1] != y1)) return null;
+        }
+        return area(o) == (x1 - x0) * (y1 - y0) ? new float[]{x0, y0, x1, y1} : null;
+    }
+}
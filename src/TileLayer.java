@@ -0,0 +1,144 @@
+import java.nio.ByteBuffer;
+
+// Immutable square grid of tile ids. Each layer keeps a palette of the tiles it actually uses and
+// bit-packs palette indices into longs, so a layer of one tile (all air) stores no grid at all.
+final class TileLayer {
+    private static final TileLayer[] UNIFORM_CACHE = new TileLayer[256];
+
+    private final int size;
+    private final byte[] palette;
+    private final int bitsPerTile;
+    private final int tilesPerWord;
+    private final long[] packed;
+
+    private TileLayer(int size, byte[] palette, int bitsPerTile, long[] packed) {
+        this.size = size;
+        this.palette = palette;
+        this.bitsPerTile = bitsPerTile;
+        this.tilesPerWord = bitsPerTile == 0 ? 0 : 64 / bitsPerTile;
+        this.packed = packed;
+    }
+
+    // A layer filled with a single tile; shared between all chunks of the same size
+    public static TileLayer uniform(int size, int tile) {
+        checkTile(tile);
+        TileLayer cached = UNIFORM_CACHE[tile];
+        if (cached != null && cached.size == size) return cached;
+
+        TileLayer layer = new TileLayer(size, new byte[]{(byte) tile}, 0, new long[0]);
+        UNIFORM_CACHE[tile] = layer;
+        return layer;
+    }
+
+    public static TileLayer pack(int[][] tiles, int size) {
+        // Presence bitset over tile ids; a tile's palette index is the number of present ids below it
+        long[] present = new long[4];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int tile = tiles[y][x];
+                checkTile(tile);
+                present[tile >>> 6] |= 1L << tile;
+            }
+        }
+
+        int paletteSize = 0;
+        for (long word : present) paletteSize += Long.bitCount(word);
+        if (paletteSize == 1) return uniform(size, tiles[0][0]);
+
+        byte[] palette = new byte[paletteSize];
+        for (int w = 0, i = 0; w < present.length; w++) {
+            for (long bits = present[w]; bits != 0; bits &= bits - 1)
+                palette[i++] = (byte) ((w << 6) + Long.numberOfTrailingZeros(bits));
+        }
+
+        int bits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+        int perWord = 64 / bits;
+        long[] packed = new long[(size * size + perWord - 1) / perWord];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int tile = tiles[y][x];
+                long index = paletteIndex(present, tile);
+                int i = y * size + x;
+                packed[i / perWord] |= index << ((i % perWord) * bits);
+            }
+        }
+
+        return new TileLayer(size, palette, bits, packed);
+    }
+
+    private static int paletteIndex(long[] present, int tile) {
+        int index = Long.bitCount(present[tile >>> 6] & ((1L << tile) - 1));
+        for (int w = 0; w < tile >>> 6; w++) index += Long.bitCount(present[w]);
+        return index;
+    }
+
+    private static void checkTile(int tile) {
+        if (tile < 0 || tile > 255) throw new IllegalArgumentException("Tile id out of range: " + tile);
+    }
+
+    public int get(int x, int y) {
+        if (bitsPerTile == 0) return palette[0] & 0xFF;
+
+        int i = y * size + x;
+        int word = i / tilesPerWord;
+        int shift = (i - word * tilesPerWord) * bitsPerTile;
+        int index = (int) (packed[word] >>> shift) & ((1 << bitsPerTile) - 1);
+        return palette[index] & 0xFF;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isUniform() {
+        return bitsPerTile == 0;
+    }
+
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    // Bytes written by writeTo
+    public int encodedBytes() {
+        return 2 + palette.length + packed.length * 8;
+    }
+
+    // Layout: bits per tile, palette size - 1, palette ids, then the packed words
+    public void writeTo(ByteBuffer out) {
+        out.put((byte) bitsPerTile);
+        out.put((byte) (palette.length - 1));
+        out.put(palette);
+        for (long word : packed) out.putLong(word);
+    }
+
+    // Decodes a layer written by writeTo, rejecting anything that does not fit a size x size grid
+    public static TileLayer readFrom(ByteBuffer in, int size) {
+        int bits = in.get() & 0xFF;
+        int paletteSize = (in.get() & 0xFF) + 1;
+        if (bits > 8 || (bits == 0) != (paletteSize == 1) || (bits > 0 && paletteSize > 1 << bits))
+            throw new IllegalArgumentException("Bad tile layer header: " + bits + " bits, " + paletteSize + " palette entries");
+
+        byte[] palette = new byte[paletteSize];
+        in.get(palette);
+        if (bits == 0) return uniform(size, palette[0] & 0xFF);
+
+        int perWord = 64 / bits;
+        long[] packed = new long[(size * size + perWord - 1) / perWord];
+        for (int i = 0; i < packed.length; i++) packed[i] = in.getLong();
+        return new TileLayer(size, palette, bits, packed);
+    }
+
+    public int[][] toArray() {
+        int[][] tiles = new int[size][size];
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++)
+                tiles[y][x] = get(x, y);
+        return tiles;
+    }
+
+    // Approximate heap footprint, counting shared uniform layers as free
+    public long estimateBytes() {
+        if (bitsPerTile == 0) return 0;
+        return 32 + (16 + palette.length + 7) / 8 * 8 + 16 + packed.length * 8L;
+    }
+}
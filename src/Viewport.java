@@ -0,0 +1,133 @@
+// Camera over the world: the world point at the centre of the window, the zoom and the window size.
+// World coordinates are in tiles, with y growing downwards like the screen; a tile is
+// tilePixels * zoom pixels wide. No GL here, so visible-set math runs without a window.
+class Viewport {
+    public static final double MIN_ZOOM = 0.02;
+    public static final double MAX_ZOOM = 10.0;
+
+    private final int tilePixels;
+    private int width, height;
+    private double centerX, centerY;
+    private double zoom = 1.0;
+
+    public Viewport(int tilePixels, int width, int height) {
+        this.tilePixels = tilePixels;
+        resize(width, height);
+    }
+
+    public void resize(int width, int height) {
+        // A minimised window reports 0 x 0; keep the view valid
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public void setZoom(double zoom) {
+        this.zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+    }
+
+    // Takes the other view's window, centre and zoom; both must use the same tile size
+    public void copyFrom(Viewport other) {
+        width = other.width;
+        height = other.height;
+        centerX = other.centerX;
+        centerY = other.centerY;
+        zoom = other.zoom;
+    }
+
+    public void centerOn(double worldX, double worldY) {
+        centerX = worldX;
+        centerY = worldY;
+    }
+
+    public double pixelsPerTile() {
+        return tilePixels * zoom;
+    }
+
+    public double toScreenX(double worldX) {
+        return (worldX - centerX) * pixelsPerTile() + width / 2.0;
+    }
+
+    public double toScreenY(double worldY) {
+        return (worldY - centerY) * pixelsPerTile() + height / 2.0;
+    }
+
+    public double toWorldX(double screenX) {
+        return centerX + (screenX - width / 2.0) / pixelsPerTile();
+    }
+
+    public double toWorldY(double screenY) {
+        return centerY + (screenY - height / 2.0) / pixelsPerTile();
+    }
+
+    // Moves the world with the cursor, so the point that was grabbed stays under it
+    public void pan(double screenDx, double screenDy) {
+        centerX -= screenDx / pixelsPerTile();
+        centerY -= screenDy / pixelsPerTile();
+    }
+
+    // Scales the zoom by factor, keeping the world point under (screenX, screenY) in place
+    public void zoomAt(double factor, double screenX, double screenY) {
+        double worldX = toWorldX(screenX);
+        double worldY = toWorldY(screenY);
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        centerX = worldX - (screenX - width / 2.0) / pixelsPerTile();
+        centerY = worldY - (screenY - height / 2.0) / pixelsPerTile();
+    }
+
+    public int focusChunkX(int chunkSize) {
+        return (int) Math.floor(centerX / chunkSize);
+    }
+
+    public int focusChunkY(int chunkSize) {
+        return (int) Math.floor(centerY / chunkSize);
+    }
+
+    // Chunks intersecting the window grown by margin chunks on every side, as {minX, minY, maxX, maxY}.
+    // If that is more than maxChunks, the range shrinks towards the focus chunk until it fits.
+    public int[] visibleChunks(int chunkSize, int margin, int maxChunks, int[] out) {
+        int minX = (int) Math.floor(toWorldX(0) / chunkSize) - margin;
+        int minY = (int) Math.floor(toWorldY(0) / chunkSize) - margin;
+        int maxX = (int) Math.floor(toWorldX(width) / chunkSize) + margin;
+        int maxY = (int) Math.floor(toWorldY(height) / chunkSize) + margin;
+
+        long columns = (long) maxX - minX + 1;
+        long rows = (long) maxY - minY + 1;
+        if (columns * rows > maxChunks) {
+            double scale = Math.sqrt((double) maxChunks / (columns * rows));
+            int halfColumns = Math.max(0, (int) ((columns * scale - 1) / 2));
+            int halfRows = Math.max(0, (int) ((rows * scale - 1) / 2));
+            int fx = focusChunkX(chunkSize);
+            int fy = focusChunkY(chunkSize);
+            minX = Math.max(minX, fx - halfColumns);
+            maxX = Math.min(maxX, fx + halfColumns);
+            minY = Math.max(minY, fy - halfRows);
+            maxY = Math.min(maxY, fy + halfRows);
+        }
+
+        out[0] = minX;
+        out[1] = minY;
+        out[2] = maxX;
+        out[3] = maxY;
+        return out;
+    }
+}
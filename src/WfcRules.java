@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+class WfcRules {
+    private final ArrayList<Set<Integer>> northRules = new ArrayList<>();
+    private final ArrayList<Set<Integer>> southRules = new ArrayList<>();
+    private final ArrayList<Set<Integer>> eastRules = new ArrayList<>();
+    private final ArrayList<Set<Integer>> westRules = new ArrayList<>();
+    private final int[] tileFrequencies;
+    public int numberOfRules;
+
+    public WfcRules(int x) {
+        numberOfRules = x;
+        tileFrequencies = new int[x + 1];
+        for (int i = 0; i <= x; i++) {
+            northRules.add(new HashSet<>());
+            southRules.add(new HashSet<>());
+            eastRules.add(new HashSet<>());
+            westRules.add(new HashSet<>());
+        }
+    }
+
+    public void learnFromExample(int[][] example) {
+        int h = example.length;
+        int w = example[0].length;
+
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int tile = example[y][x];
+                tileFrequencies[tile]++;
+
+                if (y > 0)
+                    northRules.get(tile).add(example[y - 1][x]);
+                if (y < h - 1)
+                    southRules.get(tile).add(example[y + 1][x]);
+                if (x > 0)
+                    westRules.get(tile).add(example[y][x - 1]);
+                if (x < w - 1)
+                    eastRules.get(tile).add(example[y][x + 1]);
+            }
+        }
+    }
+
+    public boolean isAllowed(int tile, int neighbor, int dx, int dy) {
+        if (dx == 1) return eastRules.get(tile).contains(neighbor);
+        if (dx == -1) return westRules.get(tile).contains(neighbor);
+        if (dy == 1) return southRules.get(tile).contains(neighbor);
+        if (dy == -1) return northRules.get(tile).contains(neighbor);
+        return true;
+    }
+
+    // Relative frequency of a tile in the examples; unseen tiles count once
+    public double getWeight(int tile) {
+        return Math.max(1, tileFrequencies[tile]);
+    }
+
+    // Freezes the learned rules into per-direction bitmask tables for the solver
+    public CompiledWfcRules compile() {
+        int tileCount = numberOfRules + 1;
+        int words = (tileCount + 63) >>> 6;
+        long[][] compatible = new long[4][tileCount * words];
+        double[] weights = new double[tileCount];
+
+        for (int tile = 0; tile < tileCount; tile++) {
+            fillMask(compatible[CompiledWfcRules.EAST], tile * words, eastRules.get(tile));
+            fillMask(compatible[CompiledWfcRules.WEST], tile * words, westRules.get(tile));
+            fillMask(compatible[CompiledWfcRules.SOUTH], tile * words, southRules.get(tile));
+            fillMask(compatible[CompiledWfcRules.NORTH], tile * words, northRules.get(tile));
+            weights[tile] = getWeight(tile);
+        }
+
+        return new CompiledWfcRules(tileCount, compatible, weights);
+    }
+
+    private static void fillMask(long[] table, int offset, Set<Integer> tiles) {
+        for (int t : tiles) table[offset + (t >>> 6)] |= 1L << t;
+    }
+
+    public Set<Integer> getAllowedNeighbors(int tile, int dx, int dy) {
+        if (dx == 1) return eastRules.get(tile);
+        if (dx == -1) return westRules.get(tile);
+        if (dy == 1) return southRules.get(tile);
+        if (dy == -1) return northRules.get(tile);
+        return new HashSet<>();
+    }
+}
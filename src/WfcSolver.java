@@ -1,207 +1,584 @@
 import java.util.*;
 
+// Scratch state is sized for the largest grid seen so far and reused, so a thread that keeps
+// one solver (see forCurrentThread) allocates nothing per solve once it has warmed up
 class WfcSolver {
+    private static final ThreadLocal<WfcSolver> ARENA =
+            ThreadLocal.withInitial(() -> new WfcSolver(ChunkGenerator.CHUNK_SIZE, 1));
+
     private int size;
-    private WfcRules rules;
-    private Random rand;
-    private int[][] grid;
-    private List<Integer> allTiles;
+    private int cellCapacity;
+    private CompiledWfcRules rules;
+    private final Random rand = new Random();
     private EdgeConstraints constraints;
+    private final EdgeConstraints edgeScratch = new EdgeConstraints();
+    private int[][] outputScratch = new int[0][0];
+
+    // Wave is a flat array of tile bitmasks, `words` longs per cell. The per-cell arrays are allocated
+    // for the widest masks seen so far, allocatedWords, which can be more than the current rules need.
+    private int tileCount;
+    private int words;
+    private int allocatedWords;
+    private long[] wave;
+    private long[] scratch;
+
+    // Worklist of cells whose domain shrank and whose neighbours need revising
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+    private int[] queue;
+    private boolean[] queued;
+    private int queueHead, queueSize;
+
+    // Shannon entropy per cell over learned tile weights, kept up to date as tiles are removed
+    private static final double NOISE_SCALE = 1e-6;
+    private double[] weights;
+    private double[] weightLogWeights;
+    private double[] sumWeights;
+    private double[] sumWeightLogWeights;
+    private double[] noise;
+    private EntropyHeap entropyHeap;
+
+    // Contradiction recovery: decisions can be undone through a trail of saved cell domains,
+    // and when backtracking runs out a block around the failed cell is reset and re-solved.
+    // Once both budgets are spent the failed cell becomes a hole that no longer constrains anything.
+    public static final int DEFAULT_MAX_BACKTRACKS = 64;
+    public static final int DEFAULT_MAX_BLOCK_RETRIES = 4;
+    public static final int DEFAULT_BLOCK_RADIUS = 2;
+    private int maxBacktracks = DEFAULT_MAX_BACKTRACKS;
+    private int maxBlockRetries = DEFAULT_MAX_BLOCK_RETRIES;
+    private int blockRadius = DEFAULT_BLOCK_RADIUS;
+    private int[] decisionCells;
+    private int[] decisionTiles;
+    private int[] decisionMarks;
+    private int decisionCount;
+    private int[] trailCells;
+    private long[] trailWords;
+    private double[] trailSums;
+    private double[] trailSumLogs;
+    private int trailSize;
+    private int contradictionCell;
+    private boolean[] holes;
+    private final SolveStats stats = new SolveStats();
+    private boolean finished;
+
+    public WfcSolver(int maxSize, int maxWords) {
+        this.words = maxWords;
+        this.allocatedWords = maxWords;
+        this.scratch = new long[maxWords];
+        this.weights = new double[0];
+        this.weightLogWeights = new double[0];
+        allocateCells(maxSize * maxSize);
+    }
+
+    // The solver owned by the calling thread
+    public static WfcSolver forCurrentThread() {
+        return ARENA.get();
+    }
+
+    private void allocateCells(int cells) {
+        cellCapacity = cells;
+        wave = new long[cells * allocatedWords];
+        queue = new int[cells];
+        queued = new boolean[cells];
+        sumWeights = new double[cells];
+        sumWeightLogWeights = new double[cells];
+        noise = new double[cells];
+        entropyHeap = new EntropyHeap(cells);
+        decisionCells = new int[cells];
+        decisionTiles = new int[cells];
+        decisionMarks = new int[cells];
+        trailCells = new int[0];
+        holes = new boolean[cells];
+    }
 
-    public WfcSolver(int size, WfcRules rules, Random rand, EdgeConstraints constraints) {
+    // Grows the scratch state if this solve needs more cells or wider masks than any before
+    private void configure(int size, CompiledWfcRules rules) {
         this.size = size;
-        this.rules = rules;
-        this.rand = rand;
-        this.constraints = constraints;
-        this.grid = new int[size][size];
-        this.allTiles = new ArrayList<>();
-        for (int i = 0; i <= rules.numberOfRules; i++) allTiles.add(i);
+        int cells = size * size;
+        words = rules.getWords();
+        if (words > allocatedWords) {
+            allocatedWords = words;
+            scratch = new long[words];
+            allocateCells(Math.max(cells, cellCapacity));
+        } else if (cells > cellCapacity) {
+            allocateCells(cells);
+        }
+
+        if (rules != this.rules) {
+            this.rules = rules;
+            tileCount = rules.getTileCount();
+            if (weights.length < tileCount) {
+                weights = new double[tileCount];
+                weightLogWeights = new double[tileCount];
+            }
+            for (int t = 0; t < tileCount; t++) {
+                weights[t] = rules.getWeight(t);
+                weightLogWeights[t] = weights[t] * Math.log(weights[t]);
+            }
+        }
+
+        // Every cell on the trail is saved just before its domain shrinks, and domains only grow again
+        // by undoing the trail or with the trail empty, so it never holds more than tileCount saves a cell
+        int trailCapacity = cells * tileCount;
+        if (trailCells.length < trailCapacity) {
+            trailCells = new int[trailCapacity];
+            trailWords = new long[trailCapacity * allocatedWords];
+            trailSums = new double[trailCapacity];
+            trailSumLogs = new double[trailCapacity];
+        }
     }
 
-    public int[][] solve() {
-        ArrayList<Set<Integer>> wave = new ArrayList<>();
-        for (int i = 0; i < size * size; i++)
-            wave.add(new HashSet<>(allTiles));
+    // Edge container owned by this solver, emptied for the next solve
+    public EdgeConstraints edgeConstraints() {
+        edgeScratch.clear();
+        return edgeScratch;
+    }
 
-        applyEdgeConstraints(wave);
-        propagateAll(wave);
+    // Reusable grid for callers that pack the solve result into their own storage
+    public int[][] outputGrid(int size) {
+        if (outputScratch.length < size) outputScratch = new int[size][size];
+        return outputScratch;
+    }
 
-        while (true) {
-            int idx = findLowestE(wave);
-            if (idx == -1) break;
+    public void setRecovery(int maxBacktracks, int maxBlockRetries, int blockRadius) {
+        this.maxBacktracks = maxBacktracks;
+        this.maxBlockRetries = maxBlockRetries;
+        this.blockRadius = blockRadius;
+    }
 
-            Set<Integer> options = wave.get(idx);
-            if (options.isEmpty()) {
-                break;
-            }
+    // Counters of the last solve() call
+    public SolveStats getStats() {
+        return stats;
+    }
+
+    // Solves a size x size grid into out; the result only depends on the rules, seed and constraints
+    public void solve(int size, CompiledWfcRules rules, long seed, EdgeConstraints constraints, int[][] out) {
+        begin(size, rules, seed, constraints);
+        step(Integer.MAX_VALUE);
+        finish(out);
+    }
 
-            int choice = pickRandom(options);
-            wave.get(idx).clear();
-            wave.get(idx).add(choice);
+    // Collapses up to maxCollapses more cells of the solve started by begin, propagating and recovering
+    // after each as solve does. Returns true once every cell is decided; the state is kept between calls,
+    // so a solve run in steps ends exactly like one solve call.
+    public boolean step(int maxCollapses) {
+        for (int n = 0; n < maxCollapses && !finished; n++) collapseNext();
+        return finished;
+    }
 
-            propagate(wave, idx);
+    // Steps until the solve is finished or about nanos have passed; at least one cell is collapsed
+    public boolean runFor(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        do {
+            collapseNext();
+        } while (!finished && System.nanoTime() - deadline < 0);
+        return finished;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void collapseNext() {
+        if (finished) return;
+        int idx = findLowestE();
+        if (idx == -1) {
+            finished = true;
+            return;
         }
 
+        int choice = pickRandom(idx);
+        decisionCells[decisionCount] = idx;
+        decisionTiles[decisionCount] = choice;
+        decisionMarks[decisionCount] = trailSize;
+        decisionCount++;
+        stats.collapses++;
+
+        saveCell(idx);
+        int base = idx * words;
+        for (int w = 0; w < words; w++) wave[base + w] = 0L;
+        wave[base + (choice >>> 6)] = 1L << choice;
+        sumWeights[idx] = weights[choice];
+        sumWeightLogWeights[idx] = weightLogWeights[choice];
+
+        if (!propagate(idx)) recover();
+    }
+
+    // Writes the finished solve into out, patching the cells recovery gave up on
+    public void finish(int[][] out) {
+        if (!finished) throw new IllegalStateException("Solve is not finished");
+        // Patching re-opens holes, which must not be saved: nothing is undone after this
+        decisionCount = 0;
+        trailSize = 0;
         for (int y = 0; y < size; y++) {
             for (int x = 0; x < size; x++) {
                 int idx = y * size + x;
-                if (!wave.get(idx).isEmpty()) {
-                    grid[y][x] = wave.get(idx).iterator().next();
+                if (holes[idx]) {
+                    stats.fallbackCells++;
+                    int patch = patchHole(x, y);
+                    out[y][x] = patch < 0 ? 0 : rules.outputTile(patch);
                 } else {
-                    grid[y][x] = 0;
+                    out[y][x] = rules.outputTile(nthTile(idx, 0));
                 }
             }
         }
-
-        return grid;
     }
 
-    private void applyEdgeConstraints(ArrayList<Set<Integer>> wave) {
-        if (constraints.topEdge != null) {
+    // Writes the cells decided so far into out and undecided for the rest. Decided cells can still
+    // change if a later contradiction backtracks over them.
+    public void peek(int[][] out, int undecided) {
+        for (int y = 0; y < size; y++) {
             for (int x = 0; x < size; x++) {
-                int requiredTile = constraints.topEdge[x];
-                int idx = 0 * size + x;
-
-                Set<Integer> validTiles = new HashSet<>();
-                for (int tile : allTiles) {
-                    if (rules.isAllowed(requiredTile, tile, 0, 1)) {
-                        validTiles.add(tile);
-                    }
-                }
-
-                wave.get(idx).retainAll(validTiles);
+                int idx = y * size + x;
+                out[y][x] = holes[idx] || count(idx) != 1 ? undecided : rules.outputTile(nthTile(idx, 0));
             }
         }
+    }
 
-        if (constraints.bottomEdge != null) {
-            for (int x = 0; x < size; x++) {
-                int requiredTile = constraints.bottomEdge[x];
-                int idx = (size - 1) * size + x;
-
-                Set<Integer> validTiles = new HashSet<>();
-                for (int tile : allTiles) {
-                    if (rules.isAllowed(requiredTile, tile, 0, -1)) {
-                        validTiles.add(tile);
-                    }
-                }
+    // Resets the wave for a new solve and propagates the edge constraints into it; step or runFor then
+    // carries the solve on
+    void begin(int size, CompiledWfcRules rules, long seed, EdgeConstraints constraints) {
+        configure(size, rules);
+        this.constraints = constraints;
+        rand.setSeed(seed);
+
+        stats.reset();
+        finished = false;
+        decisionCount = 0;
+        trailSize = 0;
+        entropyHeap.clear();
+        for (int i = 0; i < size * size; i++) {
+            noise[i] = rand.nextDouble() * NOISE_SCALE;
+            fillAll(i);
+        }
 
-                wave.get(idx).retainAll(validTiles);
-            }
+        applyEdgeConstraints(0, 0, size - 1, size - 1);
+        if (!propagateAll()) recover();
+    }
+
+    private void fillAll(int idx) {
+        holes[idx] = false;
+        int base = idx * words;
+        for (int w = 0; w < words; w++) {
+            int bits = Math.min(64, tileCount - (w << 6));
+            wave[base + w] = bits == 64 ? -1L : (1L << bits) - 1;
         }
 
-        if (constraints.leftEdge != null) {
-            for (int y = 0; y < size; y++) {
-                int requiredTile = constraints.leftEdge[y];
-                int idx = y * size + 0;
+        double sum = 0, sumLog = 0;
+        for (int t = 0; t < tileCount; t++) {
+            sum += weights[t];
+            sumLog += weightLogWeights[t];
+        }
+        sumWeights[idx] = sum;
+        sumWeightLogWeights[idx] = sumLog;
+        updateEntropy(idx);
+    }
 
-                Set<Integer> validTiles = new HashSet<>();
-                for (int tile : allTiles) {
-                    if (rules.isAllowed(requiredTile, tile, 1, 0)) {
-                        validTiles.add(tile);
-                    }
-                }
+    // Replaces one word of a cell's domain, subtracting the weights of removed tiles
+    private void setWord(int idx, int w, long bits) {
+        int i = idx * words + w;
+        for (long removed = wave[i] & ~bits; removed != 0; removed &= removed - 1) {
+            int t = (w << 6) + Long.numberOfTrailingZeros(removed);
+            sumWeights[idx] -= weights[t];
+            sumWeightLogWeights[idx] -= weightLogWeights[t];
+        }
+        wave[i] = bits;
+    }
 
-                wave.get(idx).retainAll(validTiles);
+    private void updateEntropy(int idx) {
+        if (holes[idx] || count(idx) <= 1) {
+            entropyHeap.remove(idx);
+            return;
+        }
+        double sum = sumWeights[idx];
+        double entropy = Math.log(sum) - sumWeightLogWeights[idx] / sum;
+        entropyHeap.update(idx, entropy + noise[idx]);
+    }
+
+    private int count(int idx) {
+        int base = idx * words;
+        int c = 0;
+        for (int w = 0; w < words; w++) c += Long.bitCount(wave[base + w]);
+        return c;
+    }
+
+    // Returns the n-th set tile of a cell, or -1 if the cell has fewer tiles
+    private int nthTile(int idx, int n) {
+        int base = idx * words;
+        for (int w = 0; w < words; w++) {
+            long bits = wave[base + w];
+            int c = Long.bitCount(bits);
+            if (n >= c) {
+                n -= c;
+                continue;
             }
+            for (; n > 0; n--) bits &= bits - 1;
+            return (w << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        return -1;
+    }
+
+    // Applies the neighbouring chunks' edges to the border cells inside the window [x0..x1] x [y0..y1]
+    private void applyEdgeConstraints(int x0, int y0, int x1, int y1) {
+        if (constraints.topEdge != null && y0 == 0) {
+            for (int x = x0; x <= x1; x++)
+                retainAllowedNext(0 * size + x, constraints.topEdge[x], CompiledWfcRules.SOUTH);
         }
 
-        if (constraints.rightEdge != null) {
-            for (int y = 0; y < size; y++) {
-                int requiredTile = constraints.rightEdge[y];
-                int idx = y * size + (size - 1);
+        if (constraints.bottomEdge != null && y1 == size - 1) {
+            for (int x = x0; x <= x1; x++)
+                retainAllowedNext((size - 1) * size + x, constraints.bottomEdge[x], CompiledWfcRules.NORTH);
+        }
 
-                Set<Integer> validTiles = new HashSet<>();
-                for (int tile : allTiles) {
-                    if (rules.isAllowed(requiredTile, tile, -1, 0)) {
-                        validTiles.add(tile);
-                    }
-                }
+        if (constraints.leftEdge != null && x0 == 0) {
+            for (int y = y0; y <= y1; y++)
+                retainAllowedNext(y * size + 0, constraints.leftEdge[y], CompiledWfcRules.EAST);
+        }
 
-                wave.get(idx).retainAll(validTiles);
-            }
+        if (constraints.rightEdge != null && x1 == size - 1) {
+            for (int y = y0; y <= y1; y++)
+                retainAllowedNext(y * size + (size - 1), constraints.rightEdge[y], CompiledWfcRules.WEST);
         }
     }
 
-    private int findLowestE(ArrayList<Set<Integer>> wave) {
-        int min = Integer.MAX_VALUE;
-        ArrayList<Integer> candidates = new ArrayList<>();
+    // Keeps only the tiles of a cell that may sit in direction dir from requiredTile
+    private void retainAllowedNext(int idx, int requiredTile, int dir) {
+        rules.allowedNextToTile(requiredTile, dir, scratch);
 
-        for (int i = 0; i < wave.size(); i++) {
-            int s = wave.get(i).size();
-            if (s > 1 && s < min) {
-                min = s;
-                candidates.clear();
-                candidates.add(i);
-            } else if (s > 1 && s == min) {
-                candidates.add(i);
+        saveCell(idx);
+        int base = idx * words;
+        for (int w = 0; w < words; w++) setWord(idx, w, wave[base + w] & scratch[w]);
+        updateEntropy(idx);
+    }
+
+    private int findLowestE() {
+        return entropyHeap.pollMin();
+    }
+
+    // Picks a tile from the cell's domain with probability proportional to its weight
+    private int pickRandom(int idx) {
+        double r = rand.nextDouble() * sumWeights[idx];
+        int base = idx * words;
+        int last = -1;
+        for (int w = 0; w < words; w++) {
+            for (long bits = wave[base + w]; bits != 0; bits &= bits - 1) {
+                last = (w << 6) + Long.numberOfTrailingZeros(bits);
+                r -= weights[last];
+                if (r < 0) return last;
             }
         }
+        return last;
+    }
 
-        if (candidates.isEmpty()) return -1;
+    // Revises every cell once; returns false if some domain is empty
+    private boolean propagateAll() {
+        for (int i = 0; i < size * size; i++) {
+            if (holes[i]) continue;
+            if (count(i) == 0) {
+                contradictionCell = i;
+                return false;
+            }
+            enqueue(i);
+        }
+        return drainQueue();
+    }
 
-        return candidates.get(rand.nextInt(candidates.size()));
+    private boolean propagate(int startIdx) {
+        enqueue(startIdx);
+        return drainQueue();
     }
 
-    private int pickRandom(Set<Integer> options) {
-        int n = rand.nextInt(options.size());
-        int i = 0;
-        for (int val : options) {
-            if (i == n) return val;
-            i++;
-        }
-        return options.iterator().next();
+    private void enqueue(int idx) {
+        if (queued[idx]) return;
+        queued[idx] = true;
+        queue[(queueHead + queueSize++) % queue.length] = idx;
     }
 
-    private void propagateAll(ArrayList<Set<Integer>> wave) {
-        val(wave);
+    private boolean drainQueue() {
+        while (queueSize > 0) {
+            int idx = queue[queueHead];
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+            queued[idx] = false;
+            if (holes[idx]) continue;
+            stats.propagations++;
+
+            int x = idx % size;
+            int y = idx / size;
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + DX[dir];
+                int ny = y + DY[dir];
+                if (nx < 0 || ny < 0 || nx >= size || ny >= size) continue;
+                int nIdx = ny * size + nx;
+                if (holes[nIdx]) continue;
+
+                rules.supportInto(wave, idx * words, dir, scratch);
+                if (!revise(nIdx, scratch)) continue;
+                stats.domainReductions++;
+
+                if (count(nIdx) == 0) {
+                    contradictionCell = nIdx;
+                    clearQueue();
+                    return false;
+                }
+                enqueue(nIdx);
+            }
+        }
+        return true;
     }
 
-    private void propagate(ArrayList<Set<Integer>> wave, int startIdx) {
-        val(wave);
+    private void clearQueue() {
+        while (queueSize > 0) {
+            queued[queue[queueHead]] = false;
+            queueHead = (queueHead + 1) % queue.length;
+            queueSize--;
+        }
     }
 
-    private void val(ArrayList<Set<Integer>> wave) {
-        int[] dx = {1, -1, 0, 0};
-        int[] dy = {0, 0, 1, -1};
+    // Intersects a cell's domain with the tiles its changed neighbour still supports
+    private boolean revise(int idx, long[] support) {
+        boolean changed = false;
+        int base = idx * words;
+        for (int w = 0; w < words; w++) {
+            long kept = wave[base + w] & support[w];
+            if (kept != wave[base + w]) {
+                if (!changed) saveCell(idx);
+                setWord(idx, w, kept);
+                changed = true;
+            }
+        }
+        if (changed) updateEntropy(idx);
+        return changed;
+    }
 
-        boolean changed = true;
-        int iterations = 0;
-        int maxIterations = size * size * 10;
+    // Called after a contradiction; returns once the wave is consistent again
+    private void recover() {
+        while (true) {
+            stats.contradictions++;
+            if (backtrack()) return;
 
-        while (changed && iterations < maxIterations) {
-            changed = false;
-            iterations++;
+            while (stats.blockRetries < maxBlockRetries) {
+                stats.blockRetries++;
+                if (resetBlock(contradictionCell, blockRadius * stats.blockRetries)) return;
+            }
 
-            for (int y = 0; y < size; y++) {
-                for (int x = 0; x < size; x++) {
-                    int idx = y * size + x;
-                    Set<Integer> possibilities = wave.get(idx);
+            // Out of budget: give up on the failed cell only and keep solving the rest of the grid
+            decisionCount = 0;
+            trailSize = 0;
+            holes[contradictionCell] = true;
+            entropyHeap.remove(contradictionCell);
+            if (propagateAll()) return;
+        }
+    }
 
-                    if (possibilities.size() <= 1) continue;
+    // Picks the heaviest tile that fits the solved neighbours of a hole, or -1 (drawn as air) if none does
+    private int patchHole(int x, int y) {
+        fillAll(y * size + x);
+        holes[y * size + x] = true;
+        entropyHeap.remove(y * size + x);
+        applyEdgeConstraints(x, y, x, y);
+
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = x + DX[dir];
+            int ny = y + DY[dir];
+            if (nx < 0 || ny < 0 || nx >= size || ny >= size) continue;
+            int nIdx = ny * size + nx;
+            if (holes[nIdx]) continue;
+
+            // The neighbour sees the hole in the opposite direction
+            rules.supportInto(wave, nIdx * words, dir ^ 1, scratch);
+            revise(y * size + x, scratch);
+        }
 
-                    for (int dir = 0; dir < 4; dir++) {
-                        int nx = x + dx[dir];
-                        int ny = y + dy[dir];
-                        if (nx < 0 || ny < 0 || nx >= size || ny >= size) continue;
-                        Set<Integer> neighborPoss = wave.get(ny * size + nx);
+        int best = -1;
+        double bestWeight = -1;
+        int base = (y * size + x) * words;
+        for (int w = 0; w < words; w++) {
+            for (long bits = wave[base + w]; bits != 0; bits &= bits - 1) {
+                int t = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (weights[t] > bestWeight) {
+                    best = t;
+                    bestWeight = weights[t];
+                }
+            }
+        }
+        return best;
+    }
 
-                        Set<Integer> allowed = new HashSet<>();
-                        for (int t : possibilities) {
-                            for (int n : neighborPoss) {
-                                if (rules.isAllowed(t, n, dx[dir], dy[dir])) {
-                                    allowed.add(t);
-                                    break;
-                                }
-                            }
-                        }
+    // Undoes the latest decisions and bans the tile each one chose
+    private boolean backtrack() {
+        while (decisionCount > 0 && stats.backtracks < maxBacktracks) {
+            stats.backtracks++;
+            decisionCount--;
+            int idx = decisionCells[decisionCount];
+            int tile = decisionTiles[decisionCount];
+            undoTo(decisionMarks[decisionCount]);
+
+            // The ban is recorded against the parent decision, so undoing that one lifts it again
+            saveCell(idx);
+            setWord(idx, tile >>> 6, wave[idx * words + (tile >>> 6)] & ~(1L << tile));
+            updateEntropy(idx);
+
+            if (count(idx) == 0) {
+                contradictionCell = idx;
+                continue;
+            }
+            if (propagate(idx)) return true;
+        }
+        return false;
+    }
 
-                        if (allowed.size() < possibilities.size() && !allowed.isEmpty()) {
-                            possibilities.retainAll(allowed);
-                            changed = true;
-                        }
-                    }
+    // Re-opens every cell within radius of the failed cell and re-propagates from the cells around it.
+    // Earlier decisions are kept as they are and can no longer be undone.
+    private boolean resetBlock(int centre, int radius) {
+        decisionCount = 0;
+        trailSize = 0;
+
+        int cx = centre % size;
+        int cy = centre / size;
+        int x0 = Math.max(0, cx - radius);
+        int y0 = Math.max(0, cy - radius);
+        int x1 = Math.min(size - 1, cx + radius);
+        int y1 = Math.min(size - 1, cy + radius);
+
+        for (int y = y0; y <= y1; y++)
+            for (int x = x0; x <= x1; x++)
+                fillAll(y * size + x);
+        applyEdgeConstraints(x0, y0, x1, y1);
+
+        for (int y = Math.max(0, y0 - 1); y <= Math.min(size - 1, y1 + 1); y++) {
+            for (int x = Math.max(0, x0 - 1); x <= Math.min(size - 1, x1 + 1); x++) {
+                int idx = y * size + x;
+                if (count(idx) == 0) {
+                    contradictionCell = idx;
+                    clearQueue();
+                    return false;
                 }
+                enqueue(idx);
             }
         }
+        return drainQueue();
+    }
+
+    // Records a cell's domain before it changes so a backtrack can restore it
+    private void saveCell(int idx) {
+        if (decisionCount == 0) return;
+
+        trailCells[trailSize] = idx;
+        System.arraycopy(wave, idx * words, trailWords, trailSize * words, words);
+        trailSums[trailSize] = sumWeights[idx];
+        trailSumLogs[trailSize] = sumWeightLogWeights[idx];
+        trailSize++;
+    }
+
+    private void undoTo(int mark) {
+        while (trailSize > mark) {
+            trailSize--;
+            int idx = trailCells[trailSize];
+            System.arraycopy(trailWords, trailSize * words, wave, idx * words, words);
+            sumWeights[idx] = trailSums[trailSize];
+            sumWeightLogWeights[idx] = trailSumLogs[trailSize];
+            updateEntropy(idx);
+        }
     }
 }
\ No newline at end of file
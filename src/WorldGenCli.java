@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless world generator for servers and batch tests: generates a rectangle of chunks on all cores
+// and writes them to a world directory in the region file format, which the game opens directly
+// with -Dworld.dir. Only uses the generator, never the renderer, so LWJGL is not loaded.
+//
+//   java -cp <classes> WorldGenCli --seed 42 --rect 0,0,255,255 --rules src/caves.txt --threads 8 --out world
+//
+// The rectangle is generated in bands of chunk rows; each band is written and dropped from memory
+// before the next starts, so memory stays at about one band whatever the rectangle size.
+public class WorldGenCli {
+
+    private static final int DEFAULT_BAND_ROWS = 32;
+
+    private long seed = System.nanoTime();
+    private int minX, minY, maxX = -1, maxY = -1;
+    private String rules = ChunkGenerator.DEFAULT_RULE_SET;
+    private int threads = ChunkGenerationService.defaultThreadCount();
+    private Path out = Paths.get("world");
+    private int bandRows = DEFAULT_BAND_ROWS;
+    private Path metricsFile;
+
+    // Per chunk generation times of the current band, in nanoseconds; every band is merged into all
+    private long[] bandLatencies = new long[0];
+    private final AtomicInteger bandCount = new AtomicInteger();
+    private long[] latencies = new long[0];
+    private int latencyCount;
+
+    private final SolveStats stats = new SolveStats();
+    private long written;
+
+    public static void main(String[] args) {
+        WorldGenCli cli = new WorldGenCli();
+        try {
+            cli.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: WorldGenCli --rect minX,minY,maxX,maxY [--seed n] [--rules file]"
+                    + " [--threads n] [--out dir] [--band rows] [--chunk-size n] [--metrics file.json|file.csv]");
+            System.exit(2);
+        }
+
+        try {
+            cli.run();
+        } catch (IOException e) {
+            System.err.println("Could not write world to " + cli.out + ": " + e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    void parse(String[] args) {
+        boolean hasRect = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--rect":
+                        String[] parts = value.split(",");
+                        if (parts.length != 4) throw new IllegalArgumentException("--rect needs minX,minY,maxX,maxY");
+                        minX = Integer.parseInt(parts[0].trim());
+                        minY = Integer.parseInt(parts[1].trim());
+                        maxX = Integer.parseInt(parts[2].trim());
+                        maxY = Integer.parseInt(parts[3].trim());
+                        hasRect = true;
+                        break;
+                    case "--rules":
+                        rules = value;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--out":
+                        out = Paths.get(value);
+                        break;
+                    case "--band":
+                        bandRows = Integer.parseInt(value);
+                        break;
+                    case "--metrics":
+                        metricsFile = Paths.get(value);
+                        GenerationMetrics.setEnabled(true);
+                        break;
+                    case "--chunk-size":
+                        ChunkGenerator.CHUNK_SIZE = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number for " + option + ": " + value);
+            }
+        }
+
+        if (!hasRect) throw new IllegalArgumentException("--rect is required");
+        if (maxX < minX || maxY < minY) throw new IllegalArgumentException("--rect is empty");
+        if (!Files.isRegularFile(Paths.get(rules))) throw new IllegalArgumentException("No rule file " + rules);
+        if (threads < 1 || bandRows < 1 || ChunkGenerator.CHUNK_SIZE < 1) {
+            throw new IllegalArgumentException("--threads, --band and --chunk-size must be positive");
+        }
+    }
+
+    void run() throws IOException, InterruptedException {
+        long worldSeed = RegionStore.loadOrCreateSeed(out, seed);
+        if (worldSeed != seed) {
+            throw new IOException("it already holds a world with seed " + worldSeed + ", not " + seed);
+        }
+
+        ChunkGenerator generator = new ChunkGenerator(seed);
+        generator.setRuleSetForDepth(Integer.MIN_VALUE, rules);
+        RegionStore store = new RegionStore(out, ChunkGenerator.CHUNK_SIZE, seed);
+
+        ChunkWaveScheduler scheduler = new ChunkWaveScheduler(generator, threads);
+        scheduler.setListener(this::record);
+
+        int width = maxX - minX + 1;
+        // Chunks one band can generate: its rows plus the even chunks around it
+        bandLatencies = new long[(width + 2) * (bandRows + 2)];
+
+        System.out.println("Generating " + width + " x " + (maxY - minY + 1) + " chunks of " + ChunkGenerator.CHUNK_SIZE
+                + "^2 cells with " + rules + ", seed " + seed + ", " + threads + " threads -> " + out);
+
+        long start = System.nanoTime();
+        try {
+            for (int y0 = minY; y0 <= maxY; y0 += bandRows) {
+                int y1 = (int) Math.min(maxY, (long) y0 + bandRows - 1);
+                bandCount.set(0);
+                scheduler.generate(minX, y0, maxX, y1);
+                writeBand(generator, store, y0, y1);
+                mergeBand();
+            }
+            store.flush();
+        } finally {
+            store.close();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        report(elapsed);
+        if (metricsFile != null) {
+            GenerationMetrics.dump(metricsFile);
+            System.out.println("Metrics written to " + metricsFile);
+        }
+    }
+
+    // Called on the wave workers. Every band starts from an empty generator, so each call is one generation.
+    private void record(Chunk chunk, long nanos) {
+        int i = bandCount.getAndIncrement();
+        if (i < bandLatencies.length) bandLatencies[i] = nanos;
+    }
+
+    private void writeBand(ChunkGenerator generator, RegionStore store, int y0, int y1) {
+        for (int y = y0; y <= y1; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                Chunk chunk = generator.getChunkIfExists(x, y);
+                store.save(chunk);
+                written++;
+                if (chunk.getSolveStats() != null) stats.add(chunk.getSolveStats());
+            }
+        }
+
+        // Neighbours just outside the band are generated again by the next band, identically
+        List<Chunk> loaded = new ArrayList<>(generator.getLoadedChunkCount());
+        generator.forEachLoadedChunk(loaded::add);
+        for (Chunk chunk : loaded) generator.unload(chunk);
+        generator.trimRegionSummaries((int) (((long) minX + maxX) / 2), y1);
+    }
+
+    private void mergeBand() {
+        int count = Math.min(bandCount.get(), bandLatencies.length);
+        if (latencyCount + count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, Math.max(latencyCount + count, latencies.length * 2));
+        }
+        System.arraycopy(bandLatencies, 0, latencies, latencyCount, count);
+        latencyCount += count;
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long cells = written * ChunkGenerator.CHUNK_SIZE * ChunkGenerator.CHUNK_SIZE;
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+
+        System.out.printf("Wrote %d chunks (%d generated, including neighbours outside the rectangle) in %.2f s%n",
+                written, latencyCount, seconds);
+        System.out.printf("Throughput: %.1f chunks/s, %.0f cells/s%n", written / seconds, cells / seconds);
+        System.out.printf("Chunk latency (ms): p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), percentile(sorted, 1.0));
+        System.out.println("Solver: " + stats);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+    }
+}
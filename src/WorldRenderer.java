@@ -1,46 +1,71 @@
 import java.awt.*;
+import java.util.Arrays;
+import java.util.Map;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
 
 public class WorldRenderer {
 
-    public static int worldRenderDistance = 4;
     public static int spriteSizeOffset = 32;
 
+    // Chunks are drawn one by one while at most this many are visible; beyond that, or once a LOD cell
+    // would be a whole chunk, the view is drawn from the region aggregates with one draw per region
+    private static final int DRAW_CHUNK_BUDGET = 4096;
+    // The LOD level is the finest one whose cells are at least this wide on screen
+    private static final double MIN_CELL_PIXELS = 4;
+    // Generation follows the visible set plus a margin, nearest chunks first, with at most
+    // MAX_REQUESTS_PER_FRAME new requests a frame and MAX_PENDING queued at once
+    private static final int GENERATION_MARGIN = 1;
+    private static final int GENERATION_CHUNK_BUDGET = 4096;
+    private static final int MAX_REQUESTS_PER_FRAME = 64;
+    private static final int MAX_PENDING = 512;
+
     private ChunkGenerator worldChunkGenerator;
-    private int chunkThatPlayerIsCurrentlyInX;
-    private int chunkThatPlayerIsCurrentlyInY;
+    private ChunkGenerationService generationService;
+    private final ChunkPrefetcher prefetcher;
 
     private final boolean renderChunkBorder = true;
 
+    private final ChunkVboCache vboCache = new ChunkVboCache();
+    // Top-left corners (x, y pairs) of this frame's missing chunks and chunk borders
+    private float[] placeholders = new float[64];
+    private int placeholderCount;
+    private float[] borders = new float[64];
+    private int borderCount;
+
     private long window;
-    private int windowWidth;
-    private int windowHeight;
+    private final Viewport viewport;
+    private final int[] drawRange = new int[4];
+    private final int[] generationRange = new int[4];
+    private final int[] regionRange = new int[4];
+    // Framebuffer pixels can differ from window coordinates on high-DPI screens
+    private int framebufferWidth, framebufferHeight;
+    private boolean projectionDirty = true;
 
-    private double cameraXLocation, cameraYLocation;
-    private double lastReleasedPositionX, lastReleasedPositionY;
     private double lastMouseX, lastMouseY;
     private boolean isDragging = false;
 
-    private double zoomLevel = 1.0;
+    // F3 shows GenerationMetrics in the window title, refreshed every OVERLAY_INTERVAL_NANOS
+    private static final long OVERLAY_INTERVAL_NANOS = 500_000_000L;
+    private boolean showMetrics;
+    private long lastOverlayUpdate;
+
     private static final double ZOOM_FACTOR = 0.8;
-    private static final double MIN_ZOOM = 0.1;
-    private static final double MAX_ZOOM = 10.0;
 
-    public WorldRenderer(ChunkGenerator cgn, long window, int width, int height) {
+    public WorldRenderer(ChunkGenerator cgn, ChunkGenerationService generationService, long window, int width, int height) {
         worldChunkGenerator = cgn;
-        chunkThatPlayerIsCurrentlyInX = 0;
-        chunkThatPlayerIsCurrentlyInY = 0;
+        this.generationService = generationService;
 
         this.window = window;
-        this.windowWidth = width;
-        this.windowHeight = height;
+        viewport = new Viewport(spriteSizeOffset, width, height);
+        prefetcher = new ChunkPrefetcher(cgn, generationService, spriteSizeOffset);
 
-        cameraXLocation = 500;
-        cameraYLocation = 500;
-        lastReleasedPositionX = cameraXLocation;
-        lastReleasedPositionY = cameraYLocation;
+        int[] fbWidth = new int[1];
+        int[] fbHeight = new int[1];
+        glfwGetFramebufferSize(window, fbWidth, fbHeight);
+        framebufferWidth = fbWidth[0];
+        framebufferHeight = fbHeight[0];
 
         setupInputCallbacks();
     }
@@ -57,232 +82,46 @@ public class WorldRenderer {
                     lastMouseY = ypos[0];
                 } else if (action == GLFW_RELEASE) {
                     isDragging = false;
-                    lastReleasedPositionX = cameraXLocation;
-                    lastReleasedPositionY = cameraYLocation;
                 }
             }
         });
 
         glfwSetCursorPosCallback(window, (window, xpos, ypos) -> {
             if (isDragging) {
-                double xDragDelta = xpos - lastMouseX;
-                double yDragDelta = ypos - lastMouseY;
-                cameraXLocation = lastReleasedPositionX + xDragDelta;
-                cameraYLocation = lastReleasedPositionY + yDragDelta;
+                viewport.pan(xpos - lastMouseX, ypos - lastMouseY);
             }
+            lastMouseX = xpos;
+            lastMouseY = ypos;
         });
 
-        glfwSetScrollCallback(window, (window, xoffset, yoffset) -> {
-            double worldXBeforeZoom = (0 - cameraXLocation) / zoomLevel;
-            double worldYBeforeZoom = (0 - cameraYLocation) / zoomLevel;
-
-            double oldZoom = zoomLevel;
-            zoomLevel *= Math.pow(1.1, -yoffset * ZOOM_FACTOR);
-            zoomLevel = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoomLevel));
-
-            double worldXAfterZoom = (0 - cameraXLocation) / zoomLevel;
-            double worldYAfterZoom = (0 - cameraYLocation) / zoomLevel;
+        glfwSetKeyCallback(window, (window, key, scancode, action, mods) -> {
+            if (key == GLFW_KEY_F3 && action == GLFW_PRESS) {
+                showMetrics = !showMetrics;
+                GenerationMetrics.setEnabled(showMetrics || Boolean.getBoolean("wfc.metrics"));
+                lastOverlayUpdate = 0;
+                if (!showMetrics) glfwSetWindowTitle(window, MainWindow.TITLE);
+            }
+        });
 
-            cameraXLocation += (worldXAfterZoom - worldXBeforeZoom) * zoomLevel;
-            cameraYLocation += (worldYAfterZoom - worldYBeforeZoom) * zoomLevel;
+        // Zooms around the cursor
+        glfwSetScrollCallback(window, (window, xoffset, yoffset) -> {
+            viewport.zoomAt(Math.pow(1.1, -yoffset * ZOOM_FACTOR), lastMouseX, lastMouseY);
+        });
 
-            lastReleasedPositionX = cameraXLocation;
-            lastReleasedPositionY = cameraYLocation;
+        glfwSetWindowSizeCallback(window, (window, width, height) -> {
+            viewport.resize(width, height);
+            projectionDirty = true;
         });
-    }
 
-    private void renderTile(int tileType, int tileX, int tileY, int tileSize) {
-        int halfSize = tileSize / 2;
-        int quarterSize = tileSize / 4;
-        int threeQuarterSize = (3 * tileSize) / 4;
-
-        switch (tileType) {
-            case 0:
-                return;
-
-            case 1: // Full block
-                glColor3f(0.0f, 1.0f, 0.0f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 2: // Slope facing north (bottom-left to top-right)
-                glColor3f(0.0f, 0.8f, 0.8f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX, tileY + tileSize);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX + tileSize, tileY);
-                glEnd();
-                break;
-
-            case 3: // Slope facing south (top-left to bottom-right)
-                glColor3f(0.8f, 0.8f, 0.0f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 4: // Slope facing east (top-left to bottom-right)
-                glColor3f(0.8f, 0.0f, 0.8f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 5: // Slope facing west (bottom-left to top-right)
-                glColor3f(1.0f, 0.5f, 0.0f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 6: // Half block (bottom half)
-                glColor3f(0.5f, 0.5f, 1.0f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY + halfSize);
-                glVertex2i(tileX + tileSize, tileY + halfSize);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 7: // Half block (top half)
-                glColor3f(1.0f, 0.5f, 0.5f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + halfSize);
-                glVertex2i(tileX, tileY + halfSize);
-                glEnd();
-                break;
-
-            case 8: // Half block (left half)
-                glColor3f(0.6f, 0.3f, 0.8f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + halfSize, tileY);
-                glVertex2i(tileX + halfSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 9: // Half block (right half)
-                glColor3f(0.8f, 0.3f, 0.6f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX + halfSize, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX + halfSize, tileY + tileSize);
-                glEnd();
-                break;
-
-
-            case 10: // Convex corner (rounded bottom-right)
-                glColor3f(0.1f, 0.6f, 0.9f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX + halfSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + halfSize);
-                glEnd();
-                break;
-
-            case 11: // Convex corner (rounded bottom-left)
-                glColor3f(0.1f, 0.6f, 0.9f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + halfSize);
-                glVertex2i(tileX + halfSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 12: // Convex corner (rounded top-right)
-                glColor3f(0.1f, 0.6f, 0.9f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + halfSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + halfSize);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 13: // Convex corner (rounded top-left)
-                glColor3f(0.1f, 0.6f, 0.9f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY + halfSize);
-                glVertex2i(tileX + halfSize, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-
-            case 14: // Corner triangle (bottom-left)
-                glColor3f(1.0f, 0.0f, 0.0f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX, tileY);                     // bottom-left corner
-                glVertex2i(tileX + halfSize, tileY);          // bottom edge midpoint
-                glVertex2i(tileX, tileY + halfSize);          // left edge midpoint
-                glEnd();
-                break;
-
-            case 15: // Corner triangle (bottom-right)
-                glColor3f(1.0f, 0.0f, 0.0f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX + tileSize, tileY);          // bottom-right corner
-                glVertex2i(tileX + tileSize, tileY + halfSize); // right edge midpoint
-                glVertex2i(tileX + halfSize, tileY);          // bottom edge midpoint
-                glEnd();
-                break;
-
-            case 16: // Corner triangle (top-right)
-                glColor3f(1.0f, 0.0f, 0.0f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX + tileSize, tileY + tileSize);   // top-right corner
-                glVertex2i(tileX + halfSize, tileY + tileSize);   // top edge midpoint
-                glVertex2i(tileX + tileSize, tileY + halfSize);   // right edge midpoint
-                glEnd();
-                break;
-
-            case 17: // Corner triangle (top-left)
-                glColor3f(1.0f, 0.0f, 0.0f);
-                glBegin(GL_TRIANGLES);
-                glVertex2i(tileX, tileY + tileSize);           // top-left corner
-                glVertex2i(tileX + halfSize, tileY + tileSize); // top edge midpoint
-                glVertex2i(tileX, tileY + halfSize);            // left edge midpoint
-                glEnd();
-                break;
-
-
-
-            default:
-                // Unknown tile type - render as red error block
-                glColor3f(1.0f, 0.0f, 0.0f);
-                glBegin(GL_POLYGON);
-                glVertex2i(tileX, tileY);
-                glVertex2i(tileX + tileSize, tileY);
-                glVertex2i(tileX + tileSize, tileY + tileSize);
-                glVertex2i(tileX, tileY + tileSize);
-                glEnd();
-                break;
-        }
+        glfwSetFramebufferSizeCallback(window, (window, width, height) -> {
+            framebufferWidth = width;
+            framebufferHeight = height;
+            projectionDirty = true;
+        });
     }
 
     private void renderChunkOpenings(Chunk chunk, int offsetX, int offsetY) {
+        double zoomLevel = viewport.getZoom();
         int chunkPixelSize = (int) (spriteSizeOffset * ChunkGenerator.CHUNK_SIZE * zoomLevel);
         int halfChunkSize = chunkPixelSize / 2;
         int textOffset = (int) (15 * zoomLevel);
@@ -337,49 +176,198 @@ public class WorldRenderer {
         }
     }
 
-    private void renderChunk(int posX, int posY) {
-        int offsetX = (int) (420+cameraXLocation + posX * spriteSizeOffset * ChunkGenerator.CHUNK_SIZE * zoomLevel);
-        int offsetY = (int) (420+cameraYLocation + posY * spriteSizeOffset * ChunkGenerator.CHUNK_SIZE * zoomLevel);
+    // Draws the chunk's mesh; missing chunks and chunk borders are only collected here and drawn
+    // together afterwards, so each costs one batch per frame instead of a draw per chunk
+    private void renderChunk(int posX, int posY, int level) {
+        float offsetX = (float) viewport.toScreenX((double) posX * ChunkGenerator.CHUNK_SIZE);
+        float offsetY = (float) viewport.toScreenY((double) posY * ChunkGenerator.CHUNK_SIZE);
+
+        Chunk chunk = worldChunkGenerator.getChunkIfExists(posX, posY);
+        if (chunk == null) {
+            // A chunk being solved on this thread shows the cells decided so far instead
+            Chunk partial = generationService.getPartialChunk(posX, posY);
+            if (partial != null && partial.getPartialLayer() != null) {
+                vboCache.drawPartial(partial, offsetX, offsetY, (float) viewport.pixelsPerTile());
+            } else {
+                placeholders = addCorner(placeholders, placeholderCount++, offsetX, offsetY);
+            }
+            return;
+        }
+        worldChunkGenerator.touch(chunk);
 
-        Chunk chunk = worldChunkGenerator.grabChunk(posX, posY);
-        int tileSize = (int) (spriteSizeOffset * zoomLevel);
+        vboCache.draw(chunk, level, offsetX, offsetY, (float) viewport.pixelsPerTile());
+        if (renderChunkBorder && level == 0) borders = addCorner(borders, borderCount++, offsetX, offsetY);
 
-        for (int y = 0; y < ChunkGenerator.CHUNK_SIZE; y++) {
-            for (int x = 0; x < ChunkGenerator.CHUNK_SIZE; x++) {
-                int tileX = offsetX + x * tileSize;
-                int tileY = offsetY + y * tileSize;
-                renderTile(chunk.dataLayer[y][x], tileX, tileY, tileSize);
+//        renderChunkOpenings(chunk, offsetX, offsetY);
+    }
+
+    private static float[] addCorner(float[] corners, int index, float x, float y) {
+        if (2 * index + 2 > corners.length) corners = Arrays.copyOf(corners, corners.length * 2);
+        corners[2 * index] = x;
+        corners[2 * index + 1] = y;
+        return corners;
+    }
+
+    private void renderPlaceholders() {
+        if (placeholderCount == 0) return;
+        float chunkPixelSize = (float) (viewport.pixelsPerTile() * ChunkGenerator.CHUNK_SIZE);
+        glColor3f(0.15f, 0.15f, 0.15f);
+        glBegin(GL_QUADS);
+        for (int i = 0; i < placeholderCount; i++) {
+            float x = placeholders[2 * i], y = placeholders[2 * i + 1];
+            glVertex2f(x, y);
+            glVertex2f(x + chunkPixelSize, y);
+            glVertex2f(x + chunkPixelSize, y + chunkPixelSize);
+            glVertex2f(x, y + chunkPixelSize);
+        }
+        glEnd();
+    }
+
+    private void renderBorders() {
+        if (borderCount == 0) return;
+        float chunkPixelSize = (float) (viewport.pixelsPerTile() * ChunkGenerator.CHUNK_SIZE);
+        glColor3f(1.0f, 0.0f, 0.0f);
+        glBegin(GL_LINES);
+        for (int i = 0; i < borderCount; i++) {
+            float x = borders[2 * i], y = borders[2 * i + 1];
+            float x1 = x + chunkPixelSize, y1 = y + chunkPixelSize;
+            glVertex2f(x, y);
+            glVertex2f(x1, y);
+            glVertex2f(x1, y);
+            glVertex2f(x1, y1);
+            glVertex2f(x1, y1);
+            glVertex2f(x, y1);
+            glVertex2f(x, y1);
+            glVertex2f(x, y);
+        }
+        glEnd();
+    }
+
+    // Draws whatever already exists in the range; generation is requested separately
+    private void renderChunks(int[] range, int level) {
+        placeholderCount = 0;
+        borderCount = 0;
+
+        vboCache.beginFrame();
+        for (int y = range[1]; y <= range[3]; y++) {
+            for (int x = range[0]; x <= range[2]; x++) {
+                renderChunk(x, y, level);
             }
         }
+        vboCache.endFrame();
+        prefetcher.recordDrawn(range);
+        // Each placeholder is a visible chunk that was not ready in time
+        GenerationMetrics.count(GenerationMetrics.Counter.PLACEHOLDERS_DRAWN, placeholderCount);
 
-        if (renderChunkBorder) {
-            int chunkPixelSize = (int) (spriteSizeOffset * ChunkGenerator.CHUNK_SIZE * zoomLevel);
-            glColor3f(1.0f, 0.0f, 0.0f);
-            glBegin(GL_LINE_LOOP);
-            glVertex2i(offsetX, offsetY);
-            glVertex2i(offsetX + chunkPixelSize, offsetY);
-            glVertex2i(offsetX + chunkPixelSize, offsetY + chunkPixelSize);
-            glVertex2i(offsetX, offsetY + chunkPixelSize);
-            glEnd();
+        renderPlaceholders();
+        renderBorders();
+    }
+
+    // Every region in view with at least one chunk ever loaded, one cell per chunk
+    private void renderRegions() {
+        int regionTiles = ChunkIndex.REGION_SIZE * ChunkGenerator.CHUNK_SIZE;
+        viewport.visibleChunks(regionTiles, 0, Integer.MAX_VALUE, regionRange);
+        float tilePixels = (float) viewport.pixelsPerTile();
+
+        vboCache.beginFrame();
+        for (int ry = regionRange[1]; ry <= regionRange[3]; ry++) {
+            for (int rx = regionRange[0]; rx <= regionRange[2]; rx++) {
+                RegionSummary summary = worldChunkGenerator.getRegionSummary(rx, ry);
+                if (summary == null) continue;
+                vboCache.drawRegion(summary, (float) viewport.toScreenX((double) rx * regionTiles),
+                        (float) viewport.toScreenY((double) ry * regionTiles), tilePixels);
+            }
         }
+        vboCache.endFrame();
+    }
 
-//        renderChunkOpenings(chunk, offsetX, offsetY);
+    // Finest LOD level whose cells are at least MIN_CELL_PIXELS wide; 0 draws every tile
+    static int lodLevel(double pixelsPerTile) {
+        int level = 0;
+        while (pixelsPerTile * (1 << level) < MIN_CELL_PIXELS && level < 30) level++;
+        return level;
     }
 
-    private void renderAllChunksInRadiusOf(int posX, int posY, int chunkRadius) {
-        for (int y = (posY - chunkRadius); y < posY + (chunkRadius + 1); y++) {
-            for (int x = (posX - chunkRadius); x < posX + (chunkRadius + 1); x++) {
-                renderChunk(x, y);
+    // Requests missing chunks of the range ring by ring outwards from the focus chunk, within this
+    // frame's request budget. Visible chunks are meshed by the workers when tiles are being drawn.
+    private void requestGeneration(int[] range, int focusX, int focusY, boolean tilesDrawn) {
+        int budget = Math.min(MAX_REQUESTS_PER_FRAME, MAX_PENDING - generationService.getPendingCount());
+        int rings = Math.max(Math.max(focusX - range[0], range[2] - focusX), Math.max(focusY - range[1], range[3] - focusY));
+
+        for (int r = 0; r <= rings && budget > 0; r++) {
+            for (int y = focusY - r; y <= focusY + r && budget > 0; y++) {
+                if (y < range[1] || y > range[3]) continue;
+                boolean edgeRow = y == focusY - r || y == focusY + r;
+                for (int x = focusX - r; x <= focusX + r && budget > 0; x += edgeRow ? 1 : 2 * r) {
+                    if (x < range[0] || x > range[2]) continue;
+                    if (worldChunkGenerator.getChunkIfExists(x, y) != null || generationService.isPending(x, y)
+                            || generationService.isFailed(x, y)) continue;
+                    boolean visible = x >= drawRange[0] && x <= drawRange[2] && y >= drawRange[1] && y <= drawRange[3];
+                    generationService.request(x, y, tilesDrawn && visible);
+                    budget--;
+                }
             }
         }
     }
 
-    public void render() {
+    private void updateProjection() {
+        glViewport(0, 0, framebufferWidth, framebufferHeight);
+        glMatrixMode(GL_PROJECTION);
         glLoadIdentity();
+        glOrtho(0, viewport.getWidth(), viewport.getHeight(), 0, -1, 1);
+        glMatrixMode(GL_MODELVIEW);
+        projectionDirty = false;
+    }
+
+    public void dispose() {
+        vboCache.dispose();
+    }
 
-        renderAllChunksInRadiusOf(chunkThatPlayerIsCurrentlyInX, chunkThatPlayerIsCurrentlyInY, worldRenderDistance);
+    private void updateMetricsOverlay() {
+        long now = System.nanoTime();
+        if (now - lastOverlayUpdate < OVERLAY_INTERVAL_NANOS) return;
+        lastOverlayUpdate = now;
+
+        Map<String, Number> m = GenerationMetrics.snapshot();
+        glfwSetWindowTitle(window, String.format(
+                "%s | solved %d, hit %.1f%% | solve p50 %.2f p99 %.2f max %.2f ms | contradictions %d, fallback %d | loaded %d, pending %d | draws %d | prefetch hit %.1f%% waste %.1f%%, placeholders %d",
+                MainWindow.TITLE, m.get("chunksSolved").longValue(), m.get("chunkHitRate").doubleValue() * 100,
+                m.get("solveP50Ms").doubleValue(), m.get("solveP99Ms").doubleValue(), m.get("solveMaxMs").doubleValue(),
+                m.get("contradictions").longValue(), m.get("fallbackCells").longValue(),
+                worldChunkGenerator.getLoadedChunkCount(), generationService.getPendingCount(), vboCache.getDrawCalls(),
+                m.get("prefetchHitRate").doubleValue() * 100, m.get("prefetchWasteRate").doubleValue() * 100,
+                m.get("placeholdersDrawn").longValue()));
+    }
 
-        chunkThatPlayerIsCurrentlyInX = -(int) (cameraXLocation / (256 * zoomLevel)) + (cameraXLocation < 0 ? 1 : 0);
-        chunkThatPlayerIsCurrentlyInY = -(int) (cameraYLocation / (256 * zoomLevel)) + (cameraYLocation < 0 ? 1 : 0);
+    public void render() {
+        if (projectionDirty) updateProjection();
+        glLoadIdentity();
+
+        int chunkSize = ChunkGenerator.CHUNK_SIZE;
+        int focusX = viewport.focusChunkX(chunkSize);
+        int focusY = viewport.focusChunkY(chunkSize);
+        viewport.visibleChunks(chunkSize, 0, Integer.MAX_VALUE, drawRange);
+        viewport.visibleChunks(chunkSize, GENERATION_MARGIN, GENERATION_CHUNK_BUDGET, generationRange);
+
+        generationService.setFocus(focusX, focusY);
+        int level = lodLevel(viewport.pixelsPerTile());
+        long visible = ((long) drawRange[2] - drawRange[0] + 1) * ((long) drawRange[3] - drawRange[1] + 1);
+        if ((1 << level) >= chunkSize || visible > DRAW_CHUNK_BUDGET) {
+            renderRegions();
+        } else {
+            renderChunks(drawRange, level);
+        }
+        requestGeneration(generationRange, focusX, focusY, level == 0 && visible <= DRAW_CHUNK_BUDGET);
+        int[] p = prefetcher.update(viewport, generationRange, GENERATION_CHUNK_BUDGET, MAX_PENDING, System.nanoTime());
+
+        // Drop queued requests outside both the current and the predicted view, which also drops
+        // predictions made before a change of direction, and keep all of it when evicting
+        int[] g = generationRange;
+        int minX = Math.min(g[0], p[0]), minY = Math.min(g[1], p[1]);
+        int maxX = Math.max(g[2], p[2]), maxY = Math.max(g[3], p[3]);
+        generationService.cancelOutside(minX, minY, maxX, maxY);
+        int keepRadius = Math.max(Math.max(focusX - minX, maxX - focusX), Math.max(focusY - minY, maxY - focusY));
+        worldChunkGenerator.evictIfOverBudget(focusX, focusY, keepRadius);
+        if (showMetrics) updateMetricsOverlay();
     }
-}
\ No newline at end of file
+}